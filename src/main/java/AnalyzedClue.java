@@ -0,0 +1,53 @@
+/**
+ * The analyzed terms of a jeopardy question, from which its query is
+ * built: the terms searched against 'body', the terms searched against
+ * 'categories' and the terms and positions of each quoted phrase.
+ *
+ * Analysis depends only on the index type, so the analyzed clues of a
+ * question set can be compiled once and reused by every run against that
+ * type of index; see CompiledQuestionSet.
+ */
+public class AnalyzedClue {
+    private final String[] bodyTerms;
+    private final String[] categoryTerms;
+    private final String[][] phraseTerms;
+    private final int[][] phrasePositions;
+
+    /**
+     * Constructs an analyzed clue.
+     *
+     * @param bodyTerms - String Array, the terms searched against 'body'.
+     * @param categoryTerms - String Array, the terms searched against
+     *                      'categories'.
+     * @param phraseTerms - String Array Array, the terms of each phrase.
+     * @param phrasePositions - int Array Array, the position of each term
+     *                        of each phrase.
+     */
+    public AnalyzedClue(String[] bodyTerms, String[] categoryTerms, String[][] phraseTerms,
+            int[][] phrasePositions) {
+        this.bodyTerms = bodyTerms;
+        this.categoryTerms = categoryTerms;
+        this.phraseTerms = phraseTerms;
+        this.phrasePositions = phrasePositions;
+    }
+
+    public String[] getBodyTerms() {
+        return bodyTerms;
+    }
+
+    public String[] getCategoryTerms() {
+        return categoryTerms;
+    }
+
+    public int getPhraseCount() {
+        return phraseTerms.length;
+    }
+
+    public String[] getPhraseTerms(int phrase) {
+        return phraseTerms[phrase];
+    }
+
+    public int[] getPhrasePositions(int phrase) {
+        return phrasePositions[phrase];
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.List;
+
+/**
+ * Decides whether a hit's title is the expected answer of a question.
+ *
+ * The answer may list alternatives separated by '|'. A title matches an
+ * alternative when both are equal once square brackets are removed and
+ * every character is lower-cased. The alternatives are literal text, so
+ * dots and parentheses in them match only themselves.
+ *
+ * Each alternative is reduced once to a 64-bit key, a hash of its
+ * normalized text. IndexBuilder stores the same key for each title in the
+ * 'titleKey' doc values, so checking a hit is a comparison of two longs,
+ * with no allocation. Only a key match compares the title with the
+ * normalized alternative, character by character as the title is
+ * normalized, to rule out a hash collision.
+ *
+ * The following methods are defined:
+ *  - titleKey - the key of a title or answer.
+ *  - matches - whether a hit's title is the answer.
+ *  - position - the position of the first hit that is the answer.
+ */
+public class AnswerMatcher {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String[] alternatives;
+    private final long[] keys;
+
+    /**
+     * Constructs a matcher for an answer.
+     *
+     * @param answer - String, the answer, with alternatives separated by '|'.
+     */
+    public AnswerMatcher(String answer) {
+        alternatives = answer.split("\\|", -1);
+        keys = new long[alternatives.length];
+        for (int i = 0; i < alternatives.length; i++) {
+            alternatives[i] = normalize(alternatives[i]);
+            keys[i] = titleKey(alternatives[i]);
+        }
+    }
+
+    /**
+     * Returns the key of a title: the 64-bit FNV-1a hash of its characters,
+     * lower-cased, without square brackets.
+     *
+     * @param title - CharSequence, the title or answer.
+     * @return long - the key.
+     */
+    public static long titleKey(CharSequence title) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c != '[' && c != ']') {
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private static String normalize(CharSequence title) {
+        StringBuilder normalized = new StringBuilder(title.length());
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c != '[' && c != ']') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Compares a normalized alternative with a title, normalizing the title
+     * one character at a time rather than into a new string.
+     *
+     * @param normalized - String, the normalized alternative.
+     * @param title - String, the title of a hit.
+     * @return boolean - true if the title normalizes to the alternative.
+     */
+    private static boolean equalsNormalized(String normalized, String title) {
+        int j = 0;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c == '[' || c == ']') {
+                continue;
+            }
+            if (j == normalized.length() || normalized.charAt(j++) != Character.toLowerCase(c)) {
+                return false;
+            }
+        }
+        return j == normalized.length();
+    }
+
+    /**
+     * Determines if a hit's title is the answer.
+     *
+     * @param hit - SearchHit, the hit.
+     * @return boolean - true if the title matches any alternative.
+     */
+    public boolean matches(SearchHit hit) {
+        if (hit.getTitle() == null) {
+            return false;
+        }
+        long titleKey = hit.getTitleKey();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == titleKey && equalsNormalized(alternatives[i], hit.getTitle())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first hit whose title is the answer.
+     *
+     * @param hits - List, the hits, best first.
+     * @return int - the position of that hit, from 1, or 0 if there is none.
+     */
+    public int position(List<SearchHit> hits) {
+        for (int i = 0; i < hits.size(); i++) {
+            if (matches(hits.get(i))) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
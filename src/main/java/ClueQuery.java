@@ -0,0 +1,71 @@
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+
+/**
+ * The query for a jeopardy question, kept in the two parts it is built
+ * from: the term queries on 'body' and 'categories', which are cheap
+ * enough to run over the whole index, and the phrases, which may have to
+ * walk position lists.
+ *
+ * Every clause of the complete query is optional, so every document it
+ * matches is matched by the terms alone, and its score is the score of
+ * the terms plus the score of the phrases under the same Similarity. The
+ * terms can therefore serve as a first pass whose top hits are rescored
+ * with the phrases.
+ */
+public class ClueQuery {
+    private final Query terms;
+    private final Query phrases;
+    private final Query complete;
+
+    /**
+     * Constructs a query from its parts.
+     *
+     * @param terms - Query, the term queries on 'body' and 'categories'.
+     * @param phrases - BooleanQuery, the phrases as optional clauses, or
+     *                null if the clue has none.
+     */
+    public ClueQuery(BooleanQuery terms, BooleanQuery phrases) {
+        this.terms = terms;
+        this.phrases = phrases;
+        if (phrases == null) {
+            complete = terms;
+        }
+        else {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            phrases.clauses().forEach(builder::add);
+            terms.clauses().forEach(builder::add);
+            complete = builder.build();
+        }
+    }
+
+    /**
+     * @return Query - the term queries, without the phrases.
+     */
+    public Query getTerms() {
+        return terms;
+    }
+
+    /**
+     * @return Query - the phrases, or null if the clue has none.
+     */
+    public Query getPhrases() {
+        return phrases;
+    }
+
+    public boolean hasPhrases() {
+        return phrases != null;
+    }
+
+    /**
+     * @return Query - the terms and phrases together.
+     */
+    public Query getComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return complete.toString();
+    }
+}
@@ -0,0 +1,298 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the query for a jeopardy question directly from the analyzed
+ * tokens of its clue and category, without going through QueryParser.
+ *
+ * The query is made of:
+ *  - every token of the clue and category, searched against 'body'
+ *  - every token of the category, searched against 'categories'
+ *  - optionally, each quoted part of the clue as a phrase on 'body',
+ *    together with the term PHRASE_TERM
+ *
+ * PHRASE_TERM reproduces how QueryParser used to read the phrases, which
+ * were written as "...\"2.5" to boost them. Without a '^' that is not a
+ * boost but the phrase plus the body term "2.5", and the results in
+ * results/ were ranked that way. Boosting the phrases for real is a
+ * separate change to the scoring: it lowered P@1 on the synthetic test
+ * index from 0.72 to 0.70. A quoted part that analyzes to no terms, such
+ * as one made only of stop words, still adds PHRASE_TERM, as QueryParser
+ * dropped only the empty phrase. Quoted parts are counted the way the
+ * clue used to be split on quotes, so empty parts at the end of the clue
+ * are not phrases.
+ *
+ * If the index has a shingle field, a quoted part spanning two to
+ * FieldSchema.MAX_SHINGLE_SIZE positions is rewritten into a single term
+ * lookup on that field, and only longer phrases walk the position lists.
+ *
+ * The clue is analyzed only once. Phrase terms are taken from the tokens
+ * whose offsets fall between a pair of quotes. The builder holds no
+ * mutable state, and the analyzer reuses a token stream per thread, so
+ * one instance can be shared by every query thread.
+ *
+ * Analysis and query construction are separate steps, so that a query can
+ * also be built from a clue analyzed ahead of time. The query keeps its
+ * terms and phrases apart (see ClueQuery), so that the terms can be run
+ * over the whole index and the phrases only used to rescore.
+ *
+ * The following methods are defined:
+ *  - build - builds the query for a question.
+ *  - analyze - analyzes the clue and category of a question.
+ *  - toQuery - builds the query for an analyzed clue.
+ */
+public class ClueQueryBuilder {
+    // what the analyzers make of the "2.5" QueryParser read after each phrase
+    public static final String PHRASE_TERM = "2.5";
+    private static final String BODY = "body";
+    private static final String CATEGORIES = "categories";
+    private static final Pattern CONTROL = Pattern.compile("\\p{Cntrl}");
+
+    private final Analyzer analyzer;
+    private final TextLemmatizer lemmatizer;
+    private final boolean phrases;
+    private final boolean shingles;
+
+    /**
+     * Constructs a query builder.
+     *
+     * @param analyzer - Analyzer, the analyzer the index was built with.
+     * @param lemmatizer - TextLemmatizer, lemmatizes the query text before
+     *                   analysis, or null if the index is not lemmatized.
+     * @param phrases - boolean, whether quoted parts of the clue become
+     *                phrase queries; needs an index with positions.
+     * @param shingles - boolean, whether short phrases are looked up in the
+     *                 shingle field instead; needs an index with shingles.
+     */
+    public ClueQueryBuilder(Analyzer analyzer, TextLemmatizer lemmatizer, boolean phrases, boolean shingles) {
+        this.analyzer = analyzer;
+        this.lemmatizer = lemmatizer;
+        this.phrases = phrases;
+        this.shingles = shingles;
+    }
+
+    /**
+     * Builds the query for a question.
+     *
+     * @param category - String, the category of the question.
+     * @param clue - String, the clue of the question.
+     * @return ClueQuery - the query, by part.
+     * @throws IOException
+     */
+    public ClueQuery build(String category, String clue) throws IOException {
+        return toQuery(analyze(category, clue), shingles);
+    }
+
+    /**
+     * Analyzes the clue and category of a question into the terms its
+     * query is built from.
+     *
+     * @param category - String, the category of the question.
+     * @param clue - String, the clue of the question.
+     * @return AnalyzedClue - the analyzed terms.
+     * @throws IOException
+     */
+    public AnalyzedClue analyze(String category, String clue) throws IOException {
+        String clueText = CONTROL.matcher(clue).replaceAll("");
+        String categoryText = CONTROL.matcher(category).replaceAll("");
+
+        List<String> bodyTerms = new ArrayList<>();
+        List<List<String>> phraseTerms = new ArrayList<>();
+        List<List<Integer>> phrasePositions = new ArrayList<>();
+        if (lemmatizer != null) {
+            addTerms(bodyTerms, BODY, lemmatizer.lemmatize(clueText + " " + categoryText));
+        }
+        else {
+            addClueTerms(bodyTerms, phraseTerms, phrasePositions, clueText);
+            addTerms(bodyTerms, BODY, categoryText);
+        }
+
+        List<String> categoryTerms = new ArrayList<>();
+        addTerms(categoryTerms, CATEGORIES, category);
+
+        List<String[]> phraseTermArrays = new ArrayList<>();
+        List<int[]> phrasePositionArrays = new ArrayList<>();
+        for (int i = 0; i < phraseTerms.size(); i++) {
+            phraseTermArrays.add(phraseTerms.get(i).toArray(new String[0]));
+            phrasePositionArrays.add(phrasePositions.get(i).stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new AnalyzedClue(bodyTerms.toArray(new String[0]), categoryTerms.toArray(new String[0]),
+                phraseTermArrays.toArray(new String[0][]), phrasePositionArrays.toArray(new int[0][]));
+    }
+
+    /**
+     * Builds the query for an analyzed clue.
+     *
+     * @param clue - AnalyzedClue, the analyzed terms of the question.
+     * @param shingles - boolean, whether short phrases are looked up in the
+     *                 shingle field; needs an index with shingles.
+     * @return ClueQuery - the query, by part.
+     */
+    public static ClueQuery toQuery(AnalyzedClue clue, boolean shingles) {
+        BooleanQuery.Builder phrases = new BooleanQuery.Builder();
+        for (int i = 0; i < clue.getPhraseCount(); i++) {
+            String[] terms = clue.getPhraseTerms(i);
+            int[] positions = clue.getPhrasePositions(i);
+            if (terms.length == 0) {
+                phrases.add(new TermQuery(new Term(BODY, PHRASE_TERM)), Occur.SHOULD);
+                continue;
+            }
+            PhraseQuery.Builder phrase = new PhraseQuery.Builder();
+            for (int j = 0; j < terms.length; j++) {
+                phrase.add(new Term(BODY, terms[j]), positions[j]);
+            }
+            phrases.add(new BooleanQuery.Builder()
+                    .add(rewritePhrase(phrase.build(), shingles), Occur.SHOULD)
+                    .add(new TermQuery(new Term(BODY, PHRASE_TERM)), Occur.SHOULD)
+                    .build(), Occur.SHOULD);
+        }
+        BooleanQuery.Builder terms = new BooleanQuery.Builder();
+        terms.add(termsQuery(BODY, clue.getBodyTerms()), Occur.SHOULD);
+        terms.add(termsQuery(CATEGORIES, clue.getCategoryTerms()), Occur.SHOULD);
+        return new ClueQuery(terms.build(), clue.getPhraseCount() > 0 ? phrases.build() : null);
+    }
+
+    private static Query termsQuery(String field, String[] terms) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        for (String term : terms) {
+            query.add(new TermQuery(new Term(field, term)), Occur.SHOULD);
+        }
+        return query.build();
+    }
+
+    /**
+     * Rewrites a phrase into a lookup of its shingle, if shingles are
+     * enabled and the phrase is short enough to have been indexed as one.
+     *
+     * @param phrase - PhraseQuery, the phrase on 'body'.
+     * @param shingles - boolean, whether shingles are enabled.
+     * @return Query - the shingle term query, or the phrase itself.
+     */
+    private static Query rewritePhrase(PhraseQuery phrase, boolean shingles) {
+        if (!shingles) {
+            return phrase;
+        }
+        Term[] terms = phrase.getTerms();
+        String[] texts = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            texts[i] = terms[i].text();
+        }
+        String shingle = FieldSchema.shingle(texts, phrase.getPositions());
+        return shingle == null ? phrase : new TermQuery(new Term(FieldSchema.SHINGLES, shingle));
+    }
+
+    /**
+     * Adds every token of the text, analyzed for the given field.
+     *
+     * @param terms - List, the terms to add to.
+     * @param field - String, the field the terms are searched against.
+     * @param text - String, the text to analyze.
+     * @throws IOException
+     */
+    private void addTerms(List<String> terms, String field, String text) throws IOException {
+        try (TokenStream tokens = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                terms.add(term.toString());
+            }
+            tokens.end();
+        }
+    }
+
+    /**
+     * Adds every token of the clue as a body term and, if phrases are
+     * enabled, adds the tokens inside each pair of quotes, with their
+     * positions, to a phrase. An unclosed quote runs to the end of the clue.
+     * A quoted part with no terms still counts as a phrase.
+     *
+     * @param bodyTerms - List, the body terms to add to.
+     * @param phraseTerms - List, receives the terms of each quoted part.
+     * @param phrasePositions - List, receives the positions of those terms.
+     * @param clue - String, the clue text.
+     * @throws IOException
+     */
+    private void addClueTerms(List<String> bodyTerms, List<List<String>> phraseTerms,
+            List<List<Integer>> phrasePositions, String clue) throws IOException {
+        List<Integer> quotes = new ArrayList<>();
+        if (phrases) {
+            for (int i = clue.indexOf('"'); i >= 0; i = clue.indexOf('"', i + 1)) {
+                quotes.add(i);
+            }
+            for (int i = quotedParts(quotes, clue.length()); i > 0; i--) {
+                phraseTerms.add(new ArrayList<>());
+                phrasePositions.add(new ArrayList<>());
+            }
+        }
+
+        try (TokenStream tokens = analyzer.tokenStream(BODY, clue)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute positionIncrement = tokens.addAttribute(PositionIncrementAttribute.class);
+            OffsetAttribute offset = tokens.addAttribute(OffsetAttribute.class);
+            tokens.reset();
+            int position = -1;
+            while (tokens.incrementToken()) {
+                position += positionIncrement.getPositionIncrement();
+                String bodyTerm = term.toString();
+                bodyTerms.add(bodyTerm);
+                int phrase = phraseIndex(quotes, offset.startOffset());
+                if (phrase >= 0) {
+                    phraseTerms.get(phrase).add(bodyTerm);
+                    phrasePositions.get(phrase).add(position);
+                }
+            }
+            tokens.end();
+        }
+    }
+
+    /**
+     * Counts the quoted parts of the clue as splitting it on quotes did:
+     * the clue is cut at every quote, empty parts at its end are dropped,
+     * and every second part that remains is quoted.
+     *
+     * @param quotes - List, the offsets of every quote in the clue.
+     * @param length - int, the length of the clue.
+     * @return int - the number of quoted parts.
+     */
+    private static int quotedParts(List<Integer> quotes, int length) {
+        int parts = 0;
+        for (int i = 0; i <= quotes.size(); i++) {
+            int start = i == 0 ? 0 : quotes.get(i - 1) + 1;
+            int end = i < quotes.size() ? quotes.get(i) : length;
+            if (start < end) {
+                parts = i + 1;
+            }
+        }
+        return parts / 2;
+    }
+
+    /**
+     * Finds the quoted part of the clue a character offset falls in.
+     *
+     * @param quotes - List, the offsets of every quote in the clue.
+     * @param offset - int, the offset of a token.
+     * @return int - the index of the quoted part, or -1 if outside quotes.
+     */
+    private static int phraseIndex(List<Integer> quotes, int offset) {
+        for (int i = 0; i < quotes.size(); i += 2) {
+            int end = i + 1 < quotes.size() ? quotes.get(i + 1) : Integer.MAX_VALUE;
+            if (offset > quotes.get(i) && offset < end) {
+                return i / 2;
+            }
+        }
+        return -1;
+    }
+}
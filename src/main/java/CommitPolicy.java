@@ -0,0 +1,91 @@
+/**
+ * Decides when IndexBuilder should commit the IndexWriter while indexing.
+ *
+ * The following policies are available:
+ *  end - commit only once, after the last file is indexed
+ *  file - commit after every wiki file
+ *  docs:N - commit after every N documents
+ *  mb:N - commit after roughly every N megabytes of body text
+ *
+ * The counters are shared by every indexing thread.
+ */
+public class CommitPolicy {
+    private static final long BYTES_PER_MB = 1024 * 1024;
+
+    private final String name;
+    private final boolean perFile;
+    private final long maxDocs;
+    private final long maxBytes;
+    private long docs;
+    private long bytes;
+
+    private CommitPolicy(String name, boolean perFile, long maxDocs, long maxBytes) {
+        this.name = name;
+        this.perFile = perFile;
+        this.maxDocs = maxDocs;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Parses a commit policy from its name, as given on the command line.
+     *
+     * @param policy - String, one of 'end', 'file', 'docs:N' or 'mb:N'.
+     * @return CommitPolicy - the parsed policy.
+     */
+    public static CommitPolicy parse(String policy) {
+        if (policy.equals("end")) {
+            return new CommitPolicy(policy, false, 0, 0);
+        }
+        else if (policy.equals("file")) {
+            return new CommitPolicy(policy, true, 0, 0);
+        }
+        else if (policy.startsWith("docs:")) {
+            long maxDocs = Long.parseLong(policy.substring("docs:".length()));
+            return new CommitPolicy(policy, false, positive(maxDocs, policy), 0);
+        }
+        else if (policy.startsWith("mb:")) {
+            long maxMB = Long.parseLong(policy.substring("mb:".length()));
+            return new CommitPolicy(policy, false, 0, positive(maxMB, policy) * BYTES_PER_MB);
+        }
+        throw new IllegalArgumentException("Unknown commit policy: " + policy);
+    }
+
+    private static long positive(long value, String policy) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Commit policy limit must be at least 1: " + policy);
+        }
+        return value;
+    }
+
+    /**
+     * Records a document that was added to the index. Body length in chars
+     * is used as the size, which is close to its UTF-8 size for wiki text.
+     *
+     * @param bodyLength - int, the length of the document body.
+     * @return boolean - true if the writer should be committed now.
+     */
+    public synchronized boolean documentAdded(int bodyLength) {
+        docs++;
+        bytes += bodyLength;
+        if ((maxDocs > 0 && docs >= maxDocs) || (maxBytes > 0 && bytes >= maxBytes)) {
+            docs = 0;
+            bytes = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that a whole wiki file was indexed.
+     *
+     * @return boolean - true if the writer should be committed now.
+     */
+    public boolean fileFinished() {
+        return perFile;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A question set whose clues have been analyzed ahead of time for one
+ * type of index, stored in a binary file that is memory-mapped to read.
+ *
+ * The same questions file is evaluated many times over, and analyzing
+ * every clue, with the POS tagger and lemmatizer for a lemmatized index,
+ * is a large part of each run. A compiled set holds the question text,
+ * the expected answer and the analyzed terms of each question, so queries
+ * are built from it directly and the analysis models are never loaded.
+ *
+ * The file starts with the format version, the analysis the clues were
+ * compiled with and the checksum of the questions file they came from. A
+ * file whose header does not match, or that is cut short, is stale and
+ * compiled again. Then
+ * come the number of questions and the offset of each question's record,
+ * so any question is decoded on its own:
+ *  category, clue, answer - strings
+ *  body terms, category terms - string arrays
+ *  phrases - a count, then for each phrase its term count and each term
+ *            with its position
+ * Strings are an int byte length followed by UTF-8; arrays an int count.
+ *
+ * The following methods are defined:
+ *  - compile - analyzes a question set and writes the compiled file.
+ *  - open - maps a compiled file, unless it is stale.
+ *  - getQuestions - the questions of the set.
+ *  - getClue - decodes the analyzed clue of a question.
+ */
+public class CompiledQuestionSet {
+    private static final int MAGIC = 0x4A514353;
+    private static final int FORMAT_VERSION = 2;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int offsetsStart;
+
+    private CompiledQuestionSet(ByteBuffer buffer, int size, int offsetsStart) {
+        this.buffer = buffer;
+        this.size = size;
+        this.offsetsStart = offsetsStart;
+    }
+
+    /**
+     * Analyzes every question and writes the compiled set, replacing any
+     * earlier file atomically.
+     *
+     * @param questions - List, the questions in file order.
+     * @param queryBuilder - ClueQueryBuilder, analyzes the clues.
+     * @param analysis - String, identifies the analysis, e.g. the index type.
+     * @param sourceChecksum - long, the checksum of the questions file.
+     * @param file - Path, the compiled file to write.
+     * @throws IOException
+     */
+    public static void compile(List<Question> questions, ClueQueryBuilder queryBuilder, String analysis,
+            long sourceChecksum, Path file) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(records);
+        int[] offsets = new int[questions.size()];
+        for (int i = 0; i < questions.size(); i++) {
+            Question question = questions.get(i);
+            AnalyzedClue clue = queryBuilder.analyze(question.getCategory(), question.getClue());
+            offsets[i] = recordOut.size();
+            writeString(recordOut, question.getCategory());
+            writeString(recordOut, question.getClue());
+            writeString(recordOut, question.getAnswer());
+            writeStrings(recordOut, clue.getBodyTerms());
+            writeStrings(recordOut, clue.getCategoryTerms());
+            recordOut.writeInt(clue.getPhraseCount());
+            for (int phrase = 0; phrase < clue.getPhraseCount(); phrase++) {
+                String[] terms = clue.getPhraseTerms(phrase);
+                int[] positions = clue.getPhrasePositions(phrase);
+                recordOut.writeInt(terms.length);
+                for (int term = 0; term < terms.length; term++) {
+                    writeString(recordOut, terms[term]);
+                    recordOut.writeInt(positions[term]);
+                }
+            }
+        }
+        recordOut.flush();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(MAGIC);
+        headerOut.writeInt(FORMAT_VERSION);
+        writeString(headerOut, analysis);
+        headerOut.writeLong(sourceChecksum);
+        headerOut.writeInt(questions.size());
+        int recordsStart = headerOut.size() + 4 * questions.size();
+        for (int offset : offsets) {
+            headerOut.writeInt(recordsStart + offset);
+        }
+        headerOut.flush();
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                header.writeTo(out);
+                records.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * Maps a compiled question set, if it was compiled with the given
+     * analysis from the current questions file.
+     *
+     * @param file - Path, the compiled file.
+     * @param analysis - String, identifies the analysis, e.g. the index type.
+     * @param sourceChecksum - long, the checksum of the questions file.
+     * @return CompiledQuestionSet - the question set, or null if the file is
+     *         missing, stale or truncated.
+     * @throws IOException
+     */
+    public static CompiledQuestionSet open(Path file, String analysis, long sourceChecksum) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || !readString(buffer).equals(analysis) || buffer.getLong() != sourceChecksum) {
+                return null;
+            }
+            int size = buffer.getInt();
+            int offsetsStart = buffer.position();
+            if (size < 0 || size > (buffer.limit() - offsetsStart) / 4) {
+                return null;
+            }
+            int recordsStart = offsetsStart + 4 * size;
+            for (int i = 0; i < size; i++) {
+                int offset = buffer.getInt(offsetsStart + 4 * i);
+                if (offset < recordsStart || offset >= buffer.limit()) {
+                    return null;
+                }
+            }
+            return new CompiledQuestionSet(buffer, size, offsetsStart);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            // cut short, or not a compiled question set at all
+            return null;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes the text and expected answer of every question.
+     *
+     * @return List - the questions in file order.
+     */
+    public List<Question> getQuestions() {
+        List<Question> questions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ByteBuffer record = record(i);
+            questions.add(new Question(readString(record), readString(record), readString(record)));
+        }
+        return questions;
+    }
+
+    /**
+     * Decodes the analyzed clue of a question. Safe to call from several
+     * threads at once.
+     *
+     * @param index - int, the position of the question in the set.
+     * @return AnalyzedClue - the analyzed terms of the question.
+     */
+    public AnalyzedClue getClue(int index) {
+        ByteBuffer record = record(index);
+        // skip the category, clue and answer
+        for (int i = 0; i < 3; i++) {
+            int length = record.getInt();
+            record.position(record.position() + length);
+        }
+        String[] bodyTerms = readStrings(record);
+        String[] categoryTerms = readStrings(record);
+        String[][] phraseTerms = new String[record.getInt()][];
+        int[][] phrasePositions = new int[phraseTerms.length][];
+        for (int phrase = 0; phrase < phraseTerms.length; phrase++) {
+            phraseTerms[phrase] = new String[record.getInt()];
+            phrasePositions[phrase] = new int[phraseTerms[phrase].length];
+            for (int term = 0; term < phraseTerms[phrase].length; term++) {
+                phraseTerms[phrase][term] = readString(record);
+                phrasePositions[phrase][term] = record.getInt();
+            }
+        }
+        return new AnalyzedClue(bodyTerms, categoryTerms, phraseTerms, phrasePositions);
+    }
+
+    private ByteBuffer record(int index) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(buffer.getInt(offsetsStart + 4 * index));
+        return record;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("String of " + length + " bytes with " + buffer.remaining() + " left");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] values = new String[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(buffer);
+        }
+        return values;
+    }
+}
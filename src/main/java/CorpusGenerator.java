@@ -0,0 +1,400 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic corpus of wiki articles, and questions about them,
+ * so that indexing and querying can be measured offline.
+ *
+ * Words are made up from syllables and drawn from a Zipfian distribution,
+ * so a few words are very common and most are rare, as in real text.
+ * Articles are written in the same format as the wiki-data files:
+ *
+ *   [[Title]]
+ *   CATEGORIES: First category, Second category
+ *   body text
+ *   ==Header==
+ *   more body text
+ *
+ * Every question is taken from an article: its category is one of the
+ * article's categories, its clue a run of words from the article's body
+ * and its answer the article's title. Optionally, part of the clue is
+ * quoted, so that the questions exercise phrase queries. Titles are two
+ * words picked by a permutation of the article number, so they are unique
+ * without keeping every title in memory. The same seed always generates
+ * the same corpus.
+ *
+ * Corpora too large to hold in memory are streamed to disk by writeCorpus.
+ *
+ * The following methods are defined:
+ *  - main - writes a corpus and its questions from the command line.
+ *  - generateArticle - generates the article with a given number.
+ *  - generateArticles - generates articles in memory.
+ *  - generateQuestion - generates a question about an article.
+ *  - generateQuestions - generates questions about the given articles.
+ *  - writeCorpus - streams articles to wiki files, sampling questions.
+ *  - writeWiki - writes articles to wiki files.
+ *  - writeQuestions - writes questions in the questions.txt format.
+ */
+public class CorpusGenerator {
+    public static final long DEFAULT_SEED = 42;
+    private static final String CONSONANTS = "bdfgklmnprstvz";
+    private static final String VOWELS = "aeiou";
+    private static final int WORDS_PER_SENTENCE = 12;
+    private static final int SENTENCES_PER_SECTION = 8;
+    private static final int CLUE_WORDS = 8;
+    private static final int MAX_QUOTED_WORDS = 4;
+
+    private final Random random;
+    private final String[] vocabulary;
+    // cumulative probability of drawing each word, by rank
+    private final double[] cumulative;
+    // titles are numbered by a permutation of the word pairs
+    private final long titleCount;
+    private final long titleMultiplier;
+    private double quotedFraction = 0;
+
+    /**
+     * Constructs a generator with a vocabulary of 20,000 words whose
+     * frequencies follow Zipf's law with an exponent of 1.
+     *
+     * @param seed - long, the seed of the generated corpus.
+     */
+    public CorpusGenerator(long seed) {
+        this(seed, 20_000, 1.0);
+    }
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed - long, the seed of the generated corpus.
+     * @param vocabularySize - int, the number of distinct words.
+     * @param exponent - double, the Zipf exponent; the word of rank r is
+     *                 drawn with probability proportional to 1 / r^exponent.
+     */
+    public CorpusGenerator(long seed, int vocabularySize, double exponent) {
+        random = new Random(seed);
+        vocabulary = new String[vocabularySize];
+        Set<String> words = new HashSet<>();
+        for (int i = 0; i < vocabularySize; i++) {
+            String word;
+            do {
+                word = makeWord(2 + random.nextInt(3));
+            } while (!words.add(word));
+            vocabulary[i] = word;
+        }
+
+        cumulative = new double[vocabularySize];
+        double total = 0;
+        for (int rank = 1; rank <= vocabularySize; rank++) {
+            total += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = total;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            cumulative[i] /= total;
+        }
+
+        titleCount = (long) vocabularySize * vocabularySize;
+        long multiplier = (long) (titleCount * 0.618) | 1;
+        while (gcd(multiplier, titleCount) != 1) {
+            multiplier += 2;
+        }
+        titleMultiplier = multiplier;
+    }
+
+    /**
+     * Writes a corpus and a questions file about it. Arguments are options
+     * in the form 'name=value':
+     *  articles - number of articles (default 100000)
+     *  articlesPerFile - number of articles in each wiki file (default 1000)
+     *  questions - number of questions (default 1000)
+     *  seed - seed of the corpus (default 42)
+     *  vocabulary - number of distinct words (default 20000)
+     *  exponent - Zipf exponent of the word frequencies (default 1.0)
+     *  quoted - fraction of clues with a quoted phrase (default 0)
+     *  output - directory receiving 'wiki-data' and 'questions.txt'
+     *           (default src/main/resources/synthetic)
+     *
+     * @param args - String Array, the generator options.
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        Path output = Paths.get(options.getOrDefault("output", "src/main/resources/synthetic"));
+        long articles = Long.parseLong(options.getOrDefault("articles", "100000"));
+        int questions = Integer.parseInt(options.getOrDefault("questions", "1000"));
+
+        long start = System.nanoTime();
+        CorpusGenerator generator = new CorpusGenerator(Long.parseLong(options.getOrDefault("seed", Long.toString(DEFAULT_SEED))),
+                Integer.parseInt(options.getOrDefault("vocabulary", "20000")),
+                Double.parseDouble(options.getOrDefault("exponent", "1.0")));
+        generator.setQuotedFraction(Double.parseDouble(options.getOrDefault("quoted", "0")));
+        List<Question> generated = generator.writeCorpus(output.resolve("wiki-data"), articles,
+                Integer.parseInt(options.getOrDefault("articlesPerFile", "1000")), questions);
+        writeQuestions(output.resolve("questions.txt"), generated);
+        System.out.printf("Generated %d articles and %d questions in %s in %.1f s\n",
+                articles, generated.size(), output, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Sets the fraction of clues in which a run of two to four words is
+     * put in quotes, as in jeopardy clues that quote a title or saying.
+     * With the default of 0 no extra random numbers are drawn, so corpora
+     * generated before stay the same.
+     *
+     * @param quotedFraction - double, between 0 and 1.
+     */
+    public void setQuotedFraction(double quotedFraction) {
+        if (quotedFraction < 0 || quotedFraction > 1) {
+            throw new IllegalArgumentException("Quoted fraction must be between 0 and 1, got " + quotedFraction);
+        }
+        this.quotedFraction = quotedFraction;
+    }
+
+    /**
+     * Parses arguments in the form 'name=value'.
+     *
+     * @param args - String Array, the arguments.
+     * @return Map - the value of each option by name.
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.err.println("Error! Options must be given as name=value: " + arg);
+                throw new RuntimeException();
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Generates the article with a given number, with one to three
+     * categories and one to four sections of body text. The title depends
+     * only on the number; everything else on the generator's random state.
+     *
+     * @param number - long, the number of the article in the corpus.
+     * @return WikiArticle - the article.
+     */
+    public WikiArticle generateArticle(long number) {
+        if (number >= titleCount) {
+            throw new IllegalArgumentException("A vocabulary of " + vocabulary.length
+                    + " words has unique titles for only " + titleCount + " articles");
+        }
+        long pair = BigInteger.valueOf(number).multiply(BigInteger.valueOf(titleMultiplier))
+                .mod(BigInteger.valueOf(titleCount)).longValue();
+        WikiArticle article = new WikiArticle(capitalize(vocabulary[(int) (pair / vocabulary.length)])
+                + " " + capitalize(vocabulary[(int) (pair % vocabulary.length)]));
+
+        List<String> categories = new ArrayList<>();
+        for (int c = 1 + random.nextInt(3); c > 0; c--) {
+            categories.add(capitalize(nextWord()) + " " + nextWord());
+        }
+        article.addCategories(String.join(", ", categories));
+
+        StringBuilder body = new StringBuilder();
+        for (int section = 1 + random.nextInt(4); section > 0; section--) {
+            if (body.length() > 0) {
+                body.append("\n==").append(capitalize(nextWord())).append("==\n");
+            }
+            for (int s = 0; s < SENTENCES_PER_SECTION; s++) {
+                appendSentence(body);
+            }
+        }
+        article.setBody(body.toString());
+        return article;
+    }
+
+    /**
+     * Generates articles numbered from zero.
+     *
+     * @param count - int, the number of articles.
+     * @return List - the articles.
+     */
+    public List<WikiArticle> generateArticles(int count) {
+        List<WikiArticle> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(generateArticle(i));
+        }
+        return articles;
+    }
+
+    /**
+     * Generates a question about an article.
+     *
+     * @param article - WikiArticle, the article holding the answer.
+     * @return Question - the question.
+     */
+    public Question generateQuestion(WikiArticle article) {
+        String[] categories = article.getCategories().get(0).split(", ");
+        String category = categories[random.nextInt(categories.length)].toUpperCase();
+
+        String[] words = article.getBody().replaceAll("==[^=]*==|\\.", " ").trim().split("\\s+");
+        int start = random.nextInt(Math.max(words.length - CLUE_WORDS, 1));
+        String[] clueWords = Arrays.copyOfRange(words, start, Math.min(start + CLUE_WORDS, words.length));
+        if (quotedFraction > 0 && clueWords.length >= 2 && random.nextDouble() < quotedFraction) {
+            int length = 2 + random.nextInt(Math.min(MAX_QUOTED_WORDS, clueWords.length) - 1);
+            int first = random.nextInt(clueWords.length - length + 1);
+            clueWords[first] = '"' + clueWords[first];
+            clueWords[first + length - 1] = clueWords[first + length - 1] + '"';
+        }
+        String clue = String.join(" ", clueWords);
+        return new Question(category, clue, article.getTitle());
+    }
+
+    /**
+     * Generates questions about randomly chosen articles.
+     *
+     * @param articles - List, the articles to ask about.
+     * @param count - int, the number of questions.
+     * @return List - the questions.
+     */
+    public List<Question> generateQuestions(List<WikiArticle> articles, int count) {
+        List<Question> questions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            questions.add(generateQuestion(articles.get(random.nextInt(articles.size()))));
+        }
+        return questions;
+    }
+
+    /**
+     * Generates articles straight into numbered wiki files, so that corpora
+     * of millions of articles never have to fit in memory, and asks
+     * questions about randomly chosen articles as they are written.
+     *
+     * @param directory - Path, the directory to write to.
+     * @param articleCount - long, the number of articles.
+     * @param articlesPerFile - int, the number of articles in each file.
+     * @param questionCount - int, the number of questions.
+     * @return List - the questions, in random order.
+     * @throws IOException
+     */
+    public List<Question> writeCorpus(Path directory, long articleCount, int articlesPerFile, int questionCount)
+            throws IOException {
+        long[] asked = new long[questionCount];
+        for (int i = 0; i < questionCount; i++) {
+            asked[i] = (long) (random.nextDouble() * articleCount);
+        }
+        Arrays.sort(asked);
+
+        List<Question> questions = new ArrayList<>(questionCount);
+        Files.createDirectories(directory);
+        int next = 0;
+        for (long first = 0; first < articleCount; first += articlesPerFile) {
+            try (BufferedWriter writer = Files.newBufferedWriter(wikiFile(directory, first / articlesPerFile),
+                    StandardCharsets.UTF_8)) {
+                for (long number = first; number < Math.min(first + articlesPerFile, articleCount); number++) {
+                    WikiArticle article = generateArticle(number);
+                    writeArticle(writer, article);
+                    for (; next < questionCount && asked[next] == number; next++) {
+                        questions.add(generateQuestion(article));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(questions, random);
+        return questions;
+    }
+
+    /**
+     * Writes articles to numbered wiki files in a directory, creating the
+     * directory if needed.
+     *
+     * @param directory - Path, the directory to write to.
+     * @param articles - List, the articles to write.
+     * @param articlesPerFile - int, the number of articles in each file.
+     * @throws IOException
+     */
+    public static void writeWiki(Path directory, List<WikiArticle> articles, int articlesPerFile)
+            throws IOException {
+        Files.createDirectories(directory);
+        for (int first = 0; first < articles.size(); first += articlesPerFile) {
+            try (BufferedWriter writer = Files.newBufferedWriter(wikiFile(directory, first / articlesPerFile),
+                    StandardCharsets.UTF_8)) {
+                for (WikiArticle article : articles.subList(first, Math.min(first + articlesPerFile, articles.size()))) {
+                    writeArticle(writer, article);
+                }
+            }
+        }
+    }
+
+    private static Path wikiFile(Path directory, long number) {
+        return directory.resolve(String.format("enwiki-%05d.txt", number));
+    }
+
+    private static void writeArticle(Writer writer, WikiArticle article) throws IOException {
+        writer.write("[[" + article.getTitle() + "]]\n\n");
+        for (String categories : article.getCategories()) {
+            writer.write("CATEGORIES: " + categories + "\n\n");
+        }
+        writer.write(article.getBody());
+        writer.write("\n\n\n");
+    }
+
+    /**
+     * Writes questions in the four line format Question.readAll reads.
+     *
+     * @param file - Path, the file to write.
+     * @param questions - List, the questions to write.
+     * @throws IOException
+     */
+    public static void writeQuestions(Path file, List<Question> questions) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Question question : questions) {
+                writer.write(question.getCategory() + "\n" + question.getClue() + "\n"
+                        + question.getAnswer() + "\n\n");
+            }
+        }
+    }
+
+    private void appendSentence(StringBuilder body) {
+        body.append(capitalize(nextWord()));
+        for (int w = 1; w < WORDS_PER_SENTENCE; w++) {
+            body.append(' ').append(nextWord());
+        }
+        body.append(". ");
+    }
+
+    /**
+     * Draws a word from the Zipfian distribution.
+     *
+     * @return String - the word.
+     */
+    private String nextWord() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[Math.min(rank < 0 ? -rank - 1 : rank, vocabulary.length - 1)];
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private String makeWord(int syllables) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())))
+                .append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Creates an index of the batch of wikipedia documents.
  */
@@ -7,24 +10,115 @@ public class CreateIndex {
     /**
      * Constructs the index with the given specifications and
      * indexes the entire set of wikipedia documents.
-     * 
-     * @param args  - String Array, determines what type of index 
-     *              specifications to use, or defaults to a positinal 
-     *              index if none were given.
+     *
+     * Several index types can be given separated by commas, e.g.
+     * 'standard,porter,positional', to build them all from a single pass
+     * over the wiki files.
+     *
+     * Any arguments after the index type are options in the form
+     * 'name=value', applied to every index type:
+     *  threads - number of worker threads to index with (default 1); when
+     *            building several types, each type has one writer thread
+     *  commit - when to commit: end, file, docs:N or mb:N (default end)
+     *  ramBufferMB - IndexWriter RAM buffer size in megabytes
+     *  metrics - a file to write the per-stage metrics to as JSON
+     *  rebuild - whether to rebuild the index rather than update it with
+     *            the wiki files that changed (default false)
+     *  schema - which postings and stored fields to write: slim keeps only
+     *           what queries read, full stores every field (default slim)
+     *  shingles - whether a positional index also indexes two and three
+     *             word shingles of the body for quoted phrases (default false)
+     *  shards - number of shards to split the index into (default 1)
+     *
+     * @param args  - String Array, determines what type of index
+     *              specifications to use, or defaults to a positinal
+     *              index if none were given, followed by any options.
      */
     public static void main(String[] args) {
         IndexBuilder indexBuilder = null;
         try {
-            if (args.length == 1) {
+            if (args.length >= 1 && args[0].contains(",")) {
+                buildAll(args[0].split(","), Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length >= 1) {
                 indexBuilder = new IndexBuilder(args[0]);
             }
             else {
                 indexBuilder = new IndexBuilder("positional");
             }
+            for (int i = 1; i < args.length; i++) {
+                applyOption(indexBuilder, args[i]);
+            }
             indexBuilder.indexWiki();
         }
         catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Builds several index types in a single pass over the wiki files.
+     *
+     * @param indexTypes - String Array, the index types to build.
+     * @param options - String Array, the options for every index type.
+     * @throws IOException
+     */
+    private static void buildAll(String[] indexTypes, String[] options) throws IOException {
+        MultiIndexBuilder multiIndexBuilder = new MultiIndexBuilder(indexTypes);
+        for (String option : options) {
+            if (option.startsWith("metrics=")) {
+                multiIndexBuilder.setMetricsPath(option.substring("metrics=".length()));
+                continue;
+            }
+            for (IndexBuilder indexBuilder : multiIndexBuilder.getBuilders()) {
+                applyOption(indexBuilder, option);
+            }
+        }
+        multiIndexBuilder.indexWiki();
+    }
+
+    /**
+     * Applies a single 'name=value' option to the index builder.
+     *
+     * @param indexBuilder - IndexBuilder, the builder to configure.
+     * @param option - String, the option to apply.
+     */
+    private static void applyOption(IndexBuilder indexBuilder, String option) {
+        int split = option.indexOf('=');
+        if (split < 0) {
+            System.err.println("Error! Options must be given as name=value: " + option);
+            throw new RuntimeException();
+        }
+        String name = option.substring(0, split);
+        String value = option.substring(split + 1);
+        if (name.equals("threads")) {
+            indexBuilder.setThreads(Integer.parseInt(value));
+        }
+        else if (name.equals("commit")) {
+            indexBuilder.setCommitPolicy(CommitPolicy.parse(value));
+        }
+        else if (name.equals("ramBufferMB")) {
+            indexBuilder.setRAMBufferSizeMB(Double.parseDouble(value));
+        }
+        else if (name.equals("metrics")) {
+            indexBuilder.setMetricsPath(value);
+        }
+        else if (name.equals("rebuild")) {
+            indexBuilder.setRebuild(Boolean.parseBoolean(value));
+        }
+        else if (name.equals("schema")) {
+            indexBuilder.setSchema(value);
+        }
+        else if (name.equals("shingles")) {
+            indexBuilder.setShingles(Boolean.parseBoolean(value));
+        }
+        else if (name.equals("shards")) {
+            indexBuilder.setShards(Integer.parseInt(value));
+        }
+        else {
+            System.err.println("Error! Unknown indexing option: " + name);
+            throw new RuntimeException();
+        }
+    }
 }
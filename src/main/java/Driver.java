@@ -1,31 +1,83 @@
+import java.io.IOException;
+
 /**
  * The main program meant to handle the querying process.
- * 
+ *
  */
 public class Driver {
 
    /**
     * Constructs the appropriate query engine and performs a set of
     * predetermined queries.
-    * 
-    * 
-    * @param args - String Array, dictates what type of query engine to 
-    *               construct.
+    *
+    * Any arguments after the index type and scoring method are options in
+    * the form 'name=value':
+    *  threads - number of questions evaluated at once (default 1)
+    *  searchThreads - number of threads each search may use (default 1)
+    *  directory - how the index is opened: auto, mmap, nio, heap or offheap
+    *              (default auto)
+    *  warm - whether to read the searched postings before querying
+    *         (default false)
+    *  metrics - a file to write the per-stage metrics to as JSON
+    *  shingles - whether quoted phrases are looked up in the shingle field
+    *             of an index built with shingles (default true)
+    *  rescore - number of top titles of a cheap first pass that are
+    *            rescored with phrases, or 0 to search in one pass
+    *            (default 0)
+    *  compiledQuestions - a file holding the questions analyzed for the
+    *                      index type, written on the first run, so that
+    *                      later runs skip analysis and model loading
+    *  cache - number of queries whose hits are cached (default 0, off)
+    *  cacheTtl - seconds cached hits stay valid, or 0 until the index
+    *             changes (default 0)
+    *  cachePath - a file the cache is loaded from and saved to, so that
+    *              a later run over the same index starts warm
+    *
+    * @param args - String Array, dictates what type of query engine to
+    *               construct, followed by any options.
     * @return None
     */
     public static void main(String[] args) {
         QueryEngine queryEngine = null;
+        int positionalArgs = 0;
+        while (positionalArgs < args.length && args[positionalArgs].indexOf('=') < 0) {
+            positionalArgs++;
+        }
         try {
-            if (args.length == 1) {
+            if (positionalArgs == 1) {
                 queryEngine = new QueryEngine(args[0], "bm25");
             }
-            else if (args.length == 2) {
+            else if (positionalArgs == 2) {
                 queryEngine = new QueryEngine(args[0], args[1]);
             }
             else {
                 queryEngine = new QueryEngine("positional", "bm25");
             }
+            int cacheSize = 0;
+            long cacheTtl = 0;
+            String cachePath = null;
+            for (int i = positionalArgs; i < args.length; i++) {
+                String name = args[i].substring(0, args[i].indexOf('='));
+                String value = args[i].substring(args[i].indexOf('=') + 1);
+                if (name.equals("cache")) {
+                    cacheSize = Integer.parseInt(value);
+                }
+                else if (name.equals("cacheTtl")) {
+                    cacheTtl = Long.parseLong(value);
+                }
+                else if (name.equals("cachePath")) {
+                    cachePath = value;
+                }
+                else {
+                    applyOption(queryEngine, args[i]);
+                }
+            }
+            queryEngine.setResultCache(cacheSize, cacheTtl);
+            queryEngine.setCachePath(cachePath);
+            // every option is set, so the index is opened once, the way it will be searched
+            queryEngine.open();
             queryEngine.performQueries();
+            queryEngine.close();
         }
         catch(Exception e) {
             e.printStackTrace();
@@ -33,4 +85,45 @@ public class Driver {
         }
     }
 
+    /**
+     * Applies a single 'name=value' option to the query engine.
+     *
+     * @param queryEngine - QueryEngine, the engine to configure.
+     * @param option - String, the option to apply.
+     * @throws IOException
+     */
+    private static void applyOption(QueryEngine queryEngine, String option) throws IOException {
+        int split = option.indexOf('=');
+        String name = option.substring(0, split);
+        String value = option.substring(split + 1);
+        if (name.equals("threads")) {
+            queryEngine.setThreads(Integer.parseInt(value));
+        }
+        else if (name.equals("searchThreads")) {
+            queryEngine.setSearchThreads(Integer.parseInt(value));
+        }
+        else if (name.equals("directory")) {
+            queryEngine.setDirectoryMode(value);
+        }
+        else if (name.equals("warm")) {
+            queryEngine.setWarm(Boolean.parseBoolean(value));
+        }
+        else if (name.equals("metrics")) {
+            queryEngine.setMetricsPath(value);
+        }
+        else if (name.equals("shingles")) {
+            queryEngine.setShingles(Boolean.parseBoolean(value));
+        }
+        else if (name.equals("compiledQuestions")) {
+            queryEngine.setCompiledQuestionsPath(value);
+        }
+        else if (name.equals("rescore")) {
+            queryEngine.setRescoreDepth(Integer.parseInt(value));
+        }
+        else {
+            System.err.println("Error! Unknown query option: " + name);
+            throw new RuntimeException();
+        }
+    }
+
 }
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Evaluates the questions against every index with every scoring method
+ * in one run.
+ *
+ * Each index is opened once, and its readers are shared by all of the
+ * scoring methods. The indexes are evaluated at the same time on one
+ * fork-join pool, which also splits each index's questions between its
+ * threads. The results are printed as a table and written as one JSON
+ * report holding, for each index and scoring method, the P@1, MRR, nDCG@10,
+ * recall@k, the hits in the top 10, the position histogram and the search
+ * latency.
+ *
+ * The following methods are defined:
+ *  - main - runs the evaluation from the command line.
+ *  - open - opens the engine of each index type that can be opened.
+ *  - evaluate - evaluates every engine on the pool.
+ */
+public class EvaluationMatrix {
+    private static final String DEFAULT_INDEXES = "standard,custom,porter,lemma,positional";
+    private static final String DEFAULT_SCORING = "bm25,tfidf,default";
+
+    /**
+     * Runs the evaluation. Arguments are options in the form 'name=value':
+     *  indexes - comma separated index types
+     *            (default standard,custom,porter,lemma,positional)
+     *  scoring - comma separated scoring methods (default bm25,tfidf,default)
+     *  questions - the questions file (default src/main/resources/questions.txt)
+     *  threads - the parallelism of the pool (default the number of processors)
+     *  output - the JSON report (default results/matrix.json)
+     * Index types whose index or models cannot be opened are skipped.
+     *
+     * @param args - String Array, the evaluation options.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = CorpusGenerator.parseOptions(args);
+            List<String> scoringMethods = Arrays.asList(options.getOrDefault("scoring", DEFAULT_SCORING).split(","));
+            List<Question> questions = Question.readAll(
+                    options.getOrDefault("questions", "src/main/resources/questions.txt"));
+            int threads = Integer.parseInt(options.getOrDefault("threads",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (threads < 1) {
+                System.err.println("Error! threads must be at least 1");
+                throw new RuntimeException();
+            }
+            Path output = Paths.get(options.getOrDefault("output", "results/matrix.json"));
+
+            List<QueryEngine> engines = open(options.getOrDefault("indexes", DEFAULT_INDEXES).split(","));
+            List<EvaluationResult> results;
+            long start = System.nanoTime();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                results = evaluate(engines, questions, scoringMethods, pool);
+            }
+            finally {
+                pool.shutdown();
+                for (QueryEngine engine : engines) {
+                    engine.close();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            printTable(results);
+            System.out.printf("Evaluated %d questions against %d indexes with %d scoring methods in %.1f s"
+                    + " (%d threads)\n", questions.size(), engines.size(), scoringMethods.size(), seconds, threads);
+            writeJson(output, results);
+            System.out.println("Results written to " + output);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error occured when running evaluation");
+        }
+    }
+
+    /**
+     * Opens a QueryEngine for each index type, loading its models up front.
+     * Index types whose index or models cannot be opened are skipped with
+     * a warning.
+     *
+     * @param indexTypes - String Array, the index types to evaluate.
+     * @return List - the engines, in the order given.
+     */
+    private static List<QueryEngine> open(String[] indexTypes) {
+        List<QueryEngine> engines = new ArrayList<>();
+        for (String indexType : indexTypes) {
+            QueryEngine engine = null;
+            try {
+                // the scoring method is chosen per search, so the default is never used
+                engine = new QueryEngine(indexType.trim(), "bm25");
+                engine.open();
+                engine.loadModels();
+                engines.add(engine);
+            }
+            catch (Exception e) {
+                System.err.println("Skipping " + indexType + " index: " + e);
+                closeQuietly(engine);
+            }
+        }
+        if (engines.isEmpty()) {
+            throw new IllegalStateException("No index could be opened");
+        }
+        return engines;
+    }
+
+    /**
+     * Closes an engine that failed to load, releasing its readers.
+     *
+     * @param engine - QueryEngine, the engine, or null if it was never built.
+     */
+    private static void closeQuietly(QueryEngine engine) {
+        if (engine == null) {
+            return;
+        }
+        try {
+            engine.close();
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Failed to close engine: " + e);
+        }
+    }
+
+    /**
+     * Evaluates every engine with every scoring method as one task per
+     * engine, whose questions are forked again within the pool.
+     *
+     * @param engines - List, the engines to evaluate.
+     * @param questions - List, the questions to ask.
+     * @param scoringMethods - List, the scoring methods to score with.
+     * @param pool - ForkJoinPool, the pool to evaluate on.
+     * @return List - the results, by engine and then scoring method.
+     * @throws IOException
+     */
+    private static List<EvaluationResult> evaluate(List<QueryEngine> engines, List<Question> questions,
+            List<String> scoringMethods, ForkJoinPool pool) throws IOException {
+        List<ForkJoinTask<List<EvaluationResult>>> tasks = new ArrayList<>();
+        for (QueryEngine engine : engines) {
+            tasks.add(pool.submit(() -> engine.evaluate(questions, scoringMethods, pool)));
+        }
+        List<EvaluationResult> results = new ArrayList<>();
+        for (ForkJoinTask<List<EvaluationResult>> task : tasks) {
+            try {
+                results.addAll(task.join());
+            }
+            catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static void printTable(List<EvaluationResult> results) {
+        System.out.printf("%-12s %-8s %6s %6s %8s %8s %9s %9s\n", "index", "scoring", "P@1", "MRR", "nDCG@10",
+                "top 10", "p50 ms", "p99 ms");
+        for (EvaluationResult result : results) {
+            System.out.printf("%-12s %-8s %6.3f %6.3f %8.3f %8d %9.3f %9.3f\n", result.getIndexType(),
+                    result.getScoringMethod(), result.precisionAt1(), result.meanReciprocalRank(),
+                    result.ndcgAt(10), result.hitsAt(10), result.latencyPercentile(0.50) / 1e6,
+                    result.latencyPercentile(0.99) / 1e6);
+        }
+    }
+
+    private static void writeJson(Path output, List<EvaluationResult> results) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                writer.println("  " + results.get(i).toJson() + (i + 1 < results.size() ? "," : ""));
+            }
+            writer.println("]");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcome of evaluating a question set against one index with one
+ * scoring method: where each answer appeared and how long each search
+ * took.
+ *
+ * Each question's position and latency are kept in a column of primitives,
+ * in question order. Every question writes only its own slot, so the
+ * questions can be evaluated on any number of threads without locking.
+ * Recording a question also counts its position in a histogram of
+ * LongAdders, which threads update without contending, and the ranking
+ * metrics are computed from the histogram alone. Every metric is a share
+ * of the questions recorded, so it is right for a question set of any
+ * size.
+ *
+ * Each question has exactly one answer, so:
+ *  - recall@k is the share of answers in the top k, and P@1 is recall@1.
+ *  - the reciprocal rank of a question is 1 / position, or 0 if missed.
+ *  - nDCG@k of a question is 1 / log2(position + 1), as its ideal DCG is 1.
+ *
+ * The following methods are defined:
+ *  - record - records the outcome of one question.
+ *  - getPosition / getLatency - the outcome of one question.
+ *  - hitsAt / recallAt / precisionAt1 - the answers found in the top k.
+ *  - meanReciprocalRank / ndcgAt - the ranking metrics.
+ *  - histogram - the number of answers found at each position.
+ *  - latencyPercentile / meanLatency - the search latencies.
+ *  - toJson - the result as a JSON object.
+ */
+public class EvaluationResult {
+    private final String indexType;
+    private final String scoringMethod;
+    private final int maxPosition;
+    private final int[] positions;
+    private final long[] latencies;
+    // questions by position, with the questions whose answer was not found at 0
+    private final LongAdder[] counts;
+    private final LongAdder totalLatency = new LongAdder();
+
+    /**
+     * Constructs an empty result.
+     *
+     * @param indexType - String, the index type evaluated.
+     * @param scoringMethod - String, the scoring method evaluated.
+     * @param questions - int, the number of questions in the set.
+     * @param maxPosition - int, the number of hits searched per question.
+     */
+    public EvaluationResult(String indexType, String scoringMethod, int questions, int maxPosition) {
+        this.indexType = indexType;
+        this.scoringMethod = scoringMethod;
+        this.maxPosition = maxPosition;
+        this.positions = new int[questions];
+        this.latencies = new long[questions];
+        this.counts = new LongAdder[maxPosition + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the outcome of one question. Each question must be recorded
+     * once.
+     *
+     * @param question - int, the position of the question in the set.
+     * @param position - int, the position of the answer, from 1, or 0 if it
+     *                 was not found.
+     * @param latency - long, the search latency, in nanoseconds.
+     */
+    public void record(int question, int position, long latency) {
+        if (position < 0 || position > maxPosition) {
+            throw new IllegalArgumentException("Position " + position + " is not between 0 and " + maxPosition);
+        }
+        positions[question] = position;
+        latencies[question] = latency;
+        counts[position].increment();
+        totalLatency.add(latency);
+    }
+
+    public String getIndexType() {
+        return indexType;
+    }
+
+    public String getScoringMethod() {
+        return scoringMethod;
+    }
+
+    public int getQuestionCount() {
+        return positions.length;
+    }
+
+    public int getPosition(int question) {
+        return positions[question];
+    }
+
+    public long getLatency(int question) {
+        return latencies[question];
+    }
+
+    /**
+     * @return long - the number of questions recorded so far.
+     */
+    public long recorded() {
+        long recorded = 0;
+        for (LongAdder count : counts) {
+            recorded += count.sum();
+        }
+        return recorded;
+    }
+
+    /**
+     * Returns the number of questions whose answer is in the top k hits.
+     *
+     * @param k - int, the number of top hits.
+     * @return long - the number of questions.
+     */
+    public long hitsAt(int k) {
+        long hits = 0;
+        for (int position = 1; position <= Math.min(k, maxPosition); position++) {
+            hits += counts[position].sum();
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the share of questions whose answer is in the top k hits.
+     *
+     * @param k - int, the number of top hits.
+     * @return double - recall@k, or 0 if no question was recorded.
+     */
+    public double recallAt(int k) {
+        return share(hitsAt(k));
+    }
+
+    /**
+     * @return double - the share of questions answered by the top hit.
+     */
+    public double precisionAt1() {
+        return recallAt(1);
+    }
+
+    /**
+     * @return double - the mean over every question of 1 / the position of
+     *         its answer, counting 0 for an answer not found.
+     */
+    public double meanReciprocalRank() {
+        double sum = 0;
+        for (int position = 1; position <= maxPosition; position++) {
+            sum += counts[position].sum() / (double) position;
+        }
+        return share(sum);
+    }
+
+    /**
+     * Returns the mean normalized discounted cumulative gain of the top k
+     * hits, with the answer as the only relevant hit.
+     *
+     * @param k - int, the number of top hits.
+     * @return double - nDCG@k.
+     */
+    public double ndcgAt(int k) {
+        double sum = 0;
+        for (int position = 1; position <= Math.min(k, maxPosition); position++) {
+            sum += counts[position].sum() / (Math.log(position + 1) / Math.log(2));
+        }
+        return share(sum);
+    }
+
+    private double share(double sum) {
+        long recorded = recorded();
+        return recorded == 0 ? 0 : sum / recorded;
+    }
+
+    /**
+     * @return long Array - the number of answers found at each position,
+     *         with position 1 at index 0.
+     */
+    public long[] histogram() {
+        long[] histogram = new long[maxPosition];
+        for (int position = 1; position <= maxPosition; position++) {
+            histogram[position - 1] = counts[position].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns a percentile of the search latencies.
+     *
+     * @param p - double, the percentile, between 0 and 1.
+     * @return long - the latency, in nanoseconds.
+     */
+    public long latencyPercentile(double p) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return QueryEngine.percentile(sorted, p);
+    }
+
+    /**
+     * @return double - the mean search latency, in nanoseconds.
+     */
+    public double meanLatency() {
+        return share(totalLatency.sum());
+    }
+
+    /**
+     * Dumps the result as a JSON object, with latencies in milliseconds.
+     *
+     * @return String - the result as JSON.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"index\":\"").append(indexType).append("\",\"scoring\":\"").append(scoringMethod)
+            .append("\",\"questions\":").append(recorded())
+            .append(",\"precisionAt1\":").append(String.format(Locale.ROOT, "%.4f", precisionAt1()))
+            .append(",\"hitsAt").append(maxPosition).append("\":").append(hitsAt(maxPosition))
+            .append(",\"mrr\":").append(String.format(Locale.ROOT, "%.4f", meanReciprocalRank()))
+            .append(",\"ndcgAt").append(maxPosition).append("\":")
+            .append(String.format(Locale.ROOT, "%.4f", ndcgAt(maxPosition)))
+            .append(",\"recall\":{");
+        for (int k = 1; k <= maxPosition; k++) {
+            json.append(k > 1 ? "," : "").append('"').append(k).append("\":")
+                .append(String.format(Locale.ROOT, "%.4f", recallAt(k)));
+        }
+        json.append("},\"positions\":").append(Arrays.toString(histogram()).replace(" ", ""))
+            .append(",\"latencyMs\":{")
+            .append(String.format(Locale.ROOT, "\"mean\":%.3f,\"p50\":%.3f,\"p99\":%.3f", meanLatency() / 1e6,
+                    latencyPercentile(0.50) / 1e6, latencyPercentile(0.99) / 1e6))
+            .append("}}");
+        return json.toString();
+    }
+}
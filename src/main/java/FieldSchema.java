@@ -0,0 +1,210 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.shingle.ShingleAnalyzerWrapper;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines how each field of an article is analyzed, indexed and stored.
+ *
+ * QueryEngine only ever reads the postings of 'body' and 'categories' and
+ * the title doc values, so the slim schema indexes no more than that:
+ *  docID - a single untokenized term, not stored
+ *  title - docs and freqs, stored as a fallback for old readers
+ *  categories - docs and freqs, not stored
+ *  body - docs and freqs, plus positions in a positional index for
+ *         phrase queries, not stored
+ *
+ * A positional index can also index the body as shingles, every run of
+ * two to MAX_SHINGLE_SIZE consecutive tokens joined by spaces, in the
+ * 'bodyShingles' field. A quoted phrase of that length is then a single
+ * term lookup rather than a walk over position lists. Positions left by
+ * removed stop words are filled with SHINGLE_FILLER, so that the shingles
+ * match what a PhraseQuery would.
+ *
+ * The full schema is the layout indexes were built with before, which
+ * stores every field and, in a positional index, indexes every field with
+ * positions and offsets. It is kept to compare against and to read what
+ * older indexes hold.
+ *
+ * The following methods are defined:
+ *  - forName - looks up a schema by name.
+ *  - analyzer - the per-field analyzer to index and query with.
+ *  - shingle - the shingle term for the tokens of a phrase.
+ *  - docIdField / titleField / categoriesField / bodyField - create the
+ *    fields of an article.
+ *  - shinglesField - creates the shingle field of the body.
+ */
+public class FieldSchema {
+    public static final String SLIM = "slim";
+    public static final String FULL = "full";
+    public static final String SHINGLES = "bodyShingles";
+    public static final int MAX_SHINGLE_SIZE = 3;
+    public static final String SHINGLE_FILLER = "_";
+    private static final String SHINGLE_SEPARATOR = " ";
+
+    private static final String[] KEYWORD_FIELDS = { "docID", "docId", "source", "key" };
+
+    private final String name;
+    private final boolean positional;
+    private final boolean shingles;
+    private final String docIdName;
+    private final FieldType docIdType;
+    private final FieldType titleType;
+    private final FieldType categoriesType;
+    private final FieldType bodyType;
+    private final FieldType shinglesType;
+
+    private FieldSchema(String name, boolean positional, boolean shingles, FieldType docIdType,
+            FieldType titleType, FieldType categoriesType, FieldType bodyType) {
+        this.name = shingles ? name + "+shingles" : name;
+        this.positional = positional;
+        this.shingles = shingles;
+        // positional indexes have always spelled it 'docID'
+        this.docIdName = positional ? "docID" : "docId";
+        this.docIdType = freeze(docIdType);
+        this.titleType = freeze(titleType);
+        this.categoriesType = freeze(categoriesType);
+        this.bodyType = freeze(bodyType);
+        this.shinglesType = freeze(textType(IndexOptions.DOCS_AND_FREQS, false));
+    }
+
+    public static FieldSchema forName(String name, boolean positional) {
+        return forName(name, positional, false);
+    }
+
+    /**
+     * Looks up a schema by name.
+     *
+     * @param name - String, 'slim' or 'full'.
+     * @param positional - boolean, whether the index serves phrase queries.
+     * @param shingles - boolean, whether to index the body as shingles;
+     *                 only a positional index serves phrase queries.
+     * @return FieldSchema - the schema.
+     */
+    public static FieldSchema forName(String name, boolean positional, boolean shingles) {
+        if (shingles && !positional) {
+            System.err.println("Error! Shingles can only be added to a positional index");
+            throw new RuntimeException();
+        }
+        if (name.equals(SLIM)) {
+            FieldType docId = new FieldType(StringField.TYPE_NOT_STORED);
+            FieldType title = textType(IndexOptions.DOCS_AND_FREQS, true);
+            FieldType categories = textType(IndexOptions.DOCS_AND_FREQS, false);
+            FieldType body = textType(positional ? IndexOptions.DOCS_AND_FREQS_AND_POSITIONS
+                    : IndexOptions.DOCS_AND_FREQS, false);
+            return new FieldSchema(name, positional, shingles, docId, title, categories, body);
+        }
+        else if (name.equals(FULL)) {
+            FieldType withOffsets = textType(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS, true);
+            if (positional) {
+                return new FieldSchema(name, true, shingles, withOffsets, withOffsets, withOffsets, withOffsets);
+            }
+            return new FieldSchema(name, false, false, new FieldType(StringField.TYPE_STORED),
+                    new FieldType(TextField.TYPE_STORED), withOffsets, new FieldType(TextField.TYPE_STORED));
+        }
+        System.err.println("Error! Unknown field schema: " + name);
+        throw new RuntimeException();
+    }
+
+    private static FieldType textType(IndexOptions indexOptions, boolean stored) {
+        FieldType fieldType = new FieldType();
+        fieldType.setTokenized(true);
+        fieldType.setIndexOptions(indexOptions);
+        fieldType.setStored(stored);
+        return fieldType;
+    }
+
+    private static FieldType freeze(FieldType fieldType) {
+        fieldType.freeze();
+        return fieldType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    public boolean hasShingles() {
+        return shingles;
+    }
+
+    /**
+     * Wraps the analyzer of an index type so that identifier fields are
+     * kept as single terms, the shingle field is shingled and every other
+     * text field uses the index analyzer. Queries must be analyzed with
+     * the same wrapper.
+     *
+     * @param textAnalyzer - Analyzer, the analyzer of the text fields.
+     * @return Analyzer - the per-field analyzer.
+     */
+    public static Analyzer analyzer(Analyzer textAnalyzer) {
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        Analyzer keyword = new KeywordAnalyzer();
+        for (String field : KEYWORD_FIELDS) {
+            fieldAnalyzers.put(field, keyword);
+        }
+        fieldAnalyzers.put(SHINGLES, new ShingleAnalyzerWrapper(textAnalyzer, 2, MAX_SHINGLE_SIZE,
+                SHINGLE_SEPARATOR, false, false, SHINGLE_FILLER));
+        return new PerFieldAnalyzerWrapper(textAnalyzer, fieldAnalyzers);
+    }
+
+    public String getDocIdName() {
+        return docIdName;
+    }
+
+    public Field docIdField(int docId) {
+        return new Field(docIdName, Integer.toString(docId), docIdType);
+    }
+
+    public Field titleField(String title) {
+        return new Field("title", title, titleType);
+    }
+
+    public Field categoriesField(String categories) {
+        return new Field("categories", categories, categoriesType);
+    }
+
+    public Field bodyField(String body) {
+        return new Field("body", body, bodyType);
+    }
+
+    public Field shinglesField(String body) {
+        return new Field(SHINGLES, body, shinglesType);
+    }
+
+    /**
+     * Returns the shingle a phrase is indexed as, filling the positions
+     * between its terms the way the shingle analyzer does.
+     *
+     * @param terms - String Array, the analyzed terms of the phrase.
+     * @param positions - int Array, the position of each term.
+     * @return String - the shingle, or null if the phrase spans fewer than
+     *         two or more than MAX_SHINGLE_SIZE positions.
+     */
+    public static String shingle(String[] terms, int[] positions) {
+        if (terms.length == 0) {
+            return null;
+        }
+        int span = positions[positions.length - 1] - positions[0] + 1;
+        if (span < 2 || span > MAX_SHINGLE_SIZE) {
+            return null;
+        }
+        String[] shingle = new String[span];
+        Arrays.fill(shingle, SHINGLE_FILLER);
+        for (int i = 0; i < terms.length; i++) {
+            shingle[positions[i] - positions[0]] = terms[i];
+        }
+        return String.join(SHINGLE_SEPARATOR, shingle);
+    }
+}
@@ -1,48 +1,95 @@
-import opennlp.tools.lemmatizer.DictionaryLemmatizer;
-import opennlp.tools.postag.POSModel;
-import opennlp.tools.postag.POSTaggerME;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.index.*;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
 import java.io.*;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 /**
  * Handles the construction of an index, with varying options for doing so.
  * 
+ * Indexing is incremental: the commit user data records the checksum and
+ * document count of every wiki file indexed (see IndexManifest), so a rerun
+ * skips unchanged files, updates the documents of changed files in place
+ * by their stable key, and deletes those of removed files. A run that dies
+ * resumes from the files recorded in its last commit.
+ * 
  * The following methods are defined:
  *  - indexWiki - Indexes an entire set of wiki documents.
+ *  - indexWikiParallel - Indexes the wiki documents on a pool of workers.
+ *  - openWriter / closeWriter - Opens and closes the index for addToIndex.
+ *  - isUnchanged - determines if a wiki file is already indexed as is.
+ *  - removeDeletedFiles - deletes the documents of removed wiki files.
  *  - addToIndex - Adds a document to the index.
+ *  - parseWikiFile - Parses a wiki file into its articles.
+ *  - writeArticles - Writes parsed articles to the index.
  *  - isTitle - determines if a string is a title.
  *  - isCategory - determines if a string is a category
  *  - isSubsectionHeader - determines if a string is a subsection header
  *  - addDocIdAndTitle - adds the title and docID to a document
  *  - addBodyAndWrite - adds the main body of text to a document
- *  - lemmatizeString - lemmatizes a string with OpenNLP
  */
 public class IndexBuilder {
     private static final String WIKI_DIRECTORY_PATH  = "src/main/resources/wiki-data";
+    // the wiki file an article came from, and its stable key: file#ordinal
+    private static final String SOURCE_FIELD = "source";
+    private static final String KEY_FIELD = "key";
+    private static final String ORDINAL_FIELD = "ordinal";
     private String directoryPath = "src/main/resources/";
+    private String wikiDirectoryPath = WIKI_DIRECTORY_PATH;
     private Analyzer analyzer;
-    private static Directory index;
-    private static IndexWriterConfig config;
-    private static IndexWriter writer;
+    private Path indexPath;
+    private double ramBufferMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+    private int shards = 1;
+    private ShardedIndexWriter writer;
     private int docId;
+    private int threads = 1;
+    private CommitPolicy commitPolicy = CommitPolicy.parse("end");
     private boolean lemmatize = false;
     private boolean positional = false;
-    private InputStream posModelIn;
-    private POSModel posModel;
-    private POSTaggerME posTagger;
-    private InputStream dictLemmatizer;
-    private DictionaryLemmatizer lemmatizer;
+    private FieldSchema schema;
+    private String schemaName = FieldSchema.SLIM;
+    private boolean shingles = false;
+    private TextLemmatizer lemmatizer;
+    private Metrics metrics;
+    private String metricsPath;
+    private boolean rebuild = false;
+    private boolean appending = false;
+    private IndexManifest manifest = new IndexManifest();
+    private AtomicInteger skippedFiles = new AtomicInteger();
+    private AtomicInteger writtenDocuments = new AtomicInteger();
     
     /**
      * Constructs the index with varying tokenization and normalization
@@ -59,15 +106,27 @@ public class IndexBuilder {
      * @throws FileNotFoundException
      */
     public IndexBuilder(String indexType) throws IOException, FileNotFoundException {
+        this(indexType, null, WIKI_DIRECTORY_PATH);
+    }
+
+    /**
+     * Constructs the index in a given directory from a given set of wiki
+     * files, such as a generated corpus.
+     * 
+     * @param indexType - String, the configuration type of index to create.
+     * @param indexPath - String, the directory to write the index to, or
+     *                  null for the default directory of the index type.
+     * @param wikiPath - String, the directory of wiki files to index.
+     * @throws IOException
+     * @throws FileNotFoundException
+     */
+    public IndexBuilder(String indexType, String indexPath, String wikiPath)
+            throws IOException, FileNotFoundException {
         if (indexType.equals("lemma")) {
             directoryPath = directoryPath + "lemmatized-indexed-documents";
             analyzer = new StandardAnalyzer();
             lemmatize = true;
-            posModelIn = new FileInputStream("src/main/resources/dictionary/en-pos-maxent.bin");
-            dictLemmatizer = new FileInputStream("src/main/resources/dictionary/en-lemmatizer.dict");
-            posModel = new POSModel(posModelIn);
-            posTagger = new POSTaggerME(posModel);
-            lemmatizer = new DictionaryLemmatizer(dictLemmatizer);
+            lemmatizer = new TextLemmatizer();
         }
         else if (indexType.equals("standard")) {
             directoryPath = directoryPath + "standard-indexed-documents";
@@ -90,38 +149,462 @@ public class IndexBuilder {
             System.err.println("Error! Must specify type of search desired");
             throw new RuntimeException();
         }
+        if (indexPath != null) {
+            directoryPath = indexPath;
+        }
+        wikiDirectoryPath = wikiPath;
+        schema = FieldSchema.forName(FieldSchema.SLIM, positional);
+        metrics = new Metrics("index-" + indexType);
+        if (lemmatize) {
+            metrics.gauge("lemma.cacheHits", () -> lemmatizer.getCache().getHits());
+            metrics.gauge("lemma.cacheMisses", () -> lemmatizer.getCache().getMisses());
+        }
+        this.indexPath = new File(directoryPath).toPath();
+    }
 
-        try {
-            index = FSDirectory.open(new File(directoryPath).toPath());
-            config = new IndexWriterConfig(analyzer);
+    /**
+     * Sets the number of worker threads used to parse and index the wiki
+     * files. A value of 1 indexes the files one at a time on the calling
+     * thread.
+     *
+     * @param threads - int, the size of the indexing worker pool.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
         }
-        catch(IOException e) {
-            throw new RuntimeException(e);
+        this.threads = threads;
+    }
+
+    /**
+     * Sets when the index is committed while indexing. Committing forces
+     * an fsync, so the default is to commit only once at the end.
+     *
+     * @param commitPolicy - CommitPolicy, the policy to commit with.
+     */
+    public void setCommitPolicy(CommitPolicy commitPolicy) {
+        this.commitPolicy = commitPolicy;
+    }
+
+    /**
+     * Sets how much RAM the IndexWriter of each shard may buffer documents
+     * in before flushing a new segment.
+     *
+     * @param ramBufferMB - double, the buffer size in megabytes.
+     */
+    public void setRAMBufferSizeMB(double ramBufferMB) {
+        if (ramBufferMB <= 0) {
+            throw new IllegalArgumentException("RAM buffer size must be positive, got " + ramBufferMB);
         }
+        this.ramBufferMB = ramBufferMB;
+    }
+
+    /**
+     * Sets the number of shards the index is split into, each a complete
+     * index of its own that QueryEngine searches in parallel. Documents
+     * are spread over the shards by their docID. An existing index with a
+     * different number of shards is rebuilt.
+     *
+     * @param shards - int, the number of shards.
+     */
+    public void setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1, got " + shards);
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Sets whether the index is rebuilt from scratch rather than updated
+     * with the wiki files that changed since it was last built.
+     *
+     * @param rebuild - boolean, whether to discard the existing index.
+     */
+    public void setRebuild(boolean rebuild) {
+        this.rebuild = rebuild;
+    }
+
+    /**
+     * Sets which fields are stored and which postings are indexed for each
+     * of them. An existing index built with another schema is rebuilt.
+     *
+     * @param schemaName - String, 'slim' (the default) or 'full'.
+     */
+    public void setSchema(String schemaName) {
+        this.schemaName = schemaName;
+        this.schema = FieldSchema.forName(schemaName, positional, shingles);
+    }
+
+    /**
+     * Sets whether a positional index also indexes the body as shingles,
+     * which QueryEngine looks up instead of running short phrase queries.
+     * An existing index built without them, or with them, is rebuilt.
+     *
+     * @param shingles - boolean, whether to add the shingle field.
+     */
+    public void setShingles(boolean shingles) {
+        this.shingles = shingles;
+        this.schema = FieldSchema.forName(schemaName, positional, shingles);
+    }
+
+    /**
+     * Sets a file the metrics are written to as JSON once indexing ends.
+     *
+     * @param metricsPath - String, the path of the JSON file.
+     */
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Returns the timers and counters of each indexing stage: parse,
+     * lemmatize, addDocument (analysis and inversion), commit and close.
+     *
+     * @return Metrics - the indexing metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Parses through the entire set of wikipedia documents
      * and adds them to the index.
      * 
+     * Files are visited in name order, so the docIDs assigned are the same
+     * regardless of how many threads are used. Files already in the index
+     * with the same checksum are skipped.
+     * 
+     * A changed file that has no more articles than before keeps its docIDs;
+     * one that grew, or a new file, is numbered after the highest docID in
+     * use. DocIDs are therefore stable across incremental runs, but only a
+     * full rebuild numbers the documents exactly as a fresh index would.
+     * 
      * @param None
      * @return None
      */
     public void indexWiki() {
-        File wikiFolder = new File(WIKI_DIRECTORY_PATH);
+        File wikiFolder = new File(wikiDirectoryPath);
         File[] wikiFiles = wikiFolder.listFiles();
+        Arrays.sort(wikiFiles);
+        long start = System.nanoTime();
+        int removedFiles;
         try {
-            writer = new IndexWriter(index, config);
-            for (File f : wikiFiles) {
-                System.out.println("*****Indexing document: " + f.getName() + "*****");
-                addToIndex(f);
+            openWriter();
+            removedFiles = removeDeletedFiles(wikiFiles);
+            if (threads > 1) {
+                indexWikiParallel(wikiFiles);
+            }
+            else {
+                for (File f : wikiFiles) {
+                    if (isUnchanged(f)) {
+                        continue;
+                    }
+                    System.out.println("*****Indexing document: " + f.getName() + "*****");
+                    addToIndex(f);
+                }
             }
-            writer.close();
+            closeWriter();
         } catch (IOException e) {
+            rollbackWriter(e);
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            rollbackWriter(e);
+            throw e;
+        } finally {
+            metrics.unregister();
+        }
+        report((System.nanoTime() - start) / 1e9, removedFiles);
+        if (metricsPath != null) {
+            try {
+                metrics.writeJson(new File(metricsPath).toPath());
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Prints how many documents were indexed and how fast.
+     * 
+     * @param seconds - double, the wall time of the run.
+     * @param removedFiles - int, the number of deleted wiki files removed.
+     */
+    void report(double seconds, int removedFiles) {
+        int indexed = writtenDocuments.get();
+        System.out.printf("Indexed %d documents in %.1f s (%.1f docs/sec, %d threads, commit=%s)\n",
+                indexed, seconds, indexed / seconds, threads, commitPolicy);
+        System.out.printf("Skipped %d unchanged files, removed %d deleted files\n", skippedFiles.get(), removedFiles);
+        printIndexSize();
+        if (lemmatize) {
+            System.out.println("Lemma cache: " + lemmatizer.getCache());
         }
     }
 
+    /**
+     * Prints the size of the index on disk, along with how much of it is
+     * stored fields, which queries never read, and positions, which only
+     * phrase queries read.
+     */
+    private void printIndexSize() {
+        try {
+            Map<String, Long> sizes = new HashMap<>();
+            for (Path shard : IndexDirectories.shardPaths(indexPath)) {
+                try (Directory directory = FSDirectory.open(shard)) {
+                    IndexDirectories.fileSizes(directory).forEach((extension, size) -> sizes.merge(extension, size, Long::sum));
+                }
+            }
+            long total = 0;
+            for (long size : sizes.values()) {
+                total += size;
+            }
+            double mb = 1024.0 * 1024.0;
+            System.out.printf("Index size %.1f MB in %d shard(s) with the %s schema: stored fields %.1f MB, "
+                    + "positions %.1f MB\n", total / mb, shards, schema.getName(), (sizes.getOrDefault("fdt", 0L) + sizes.getOrDefault("fdx", 0L)) / mb,
+                    (sizes.getOrDefault("pos", 0L) + sizes.getOrDefault("pay", 0L)) / mb);
+        }
+        catch (IOException e) {
+            System.err.println("Could not read the index size: " + e);
+        }
+    }
+
+    /**
+     * Opens the IndexWriter of every shard that addToIndex writes to, and
+     * reads which wiki files their last commit holds. The writers can only
+     * be opened once per IndexBuilder. The metrics are exposed through JMX
+     * until closeWriter.
+     * 
+     * An existing index without a record of its wiki files was built before
+     * indexing was incremental, so it cannot be updated in place and is
+     * rebuilt instead. Files that a crash left committed in only some of
+     * the shards are removed from all of them, and indexed again.
+     * 
+     * @throws IOException
+     */
+    void openWriter() throws IOException {
+        metrics.register();
+        writer = new ShardedIndexWriter(indexPath, shards, rebuild ? OpenMode.CREATE : OpenMode.CREATE_OR_APPEND,
+                () -> new IndexWriterConfig(FieldSchema.analyzer(analyzer)).setRAMBufferSizeMB(ramBufferMB));
+        manifest = IndexManifest.read(writer.getCommonCommitData().entrySet());
+        // roll back the files a crash left committed in only some shards
+        for (String fileName : IndexManifest.read(writer.getAnyCommitData().entrySet()).fileNames()) {
+            if (manifest.get(fileName) == null) {
+                writer.deleteDocuments(new Term(SOURCE_FIELD, fileName));
+            }
+        }
+        appending = writer.numDocs() > 0;
+        if (appending && manifest.isEmpty()) {
+            System.out.println("Index has no record of its wiki files, rebuilding it");
+            writer.deleteAll();
+            appending = false;
+            manifest = new IndexManifest();
+        }
+        else if (appending && !schema.getName().equals(manifest.getSchema())) {
+            System.out.println("Index was built with the " + manifest.getSchema() + " field schema, rebuilding it");
+            writer.deleteAll();
+            appending = false;
+            manifest = new IndexManifest();
+        }
+        manifest.setSchema(schema.getName());
+        docId = manifest.nextDocId();
+    }
+
+    /**
+     * Commits and closes the IndexWriter of every shard, and removes the
+     * metrics from JMX.
+     * 
+     * @throws IOException
+     */
+    void closeWriter() throws IOException {
+        long start = System.nanoTime();
+        try {
+            writer.close(manifest.toCommitData());
+            metrics.record("index.close", System.nanoTime() - start);
+        }
+        finally {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Closes the IndexWriter of every shard without committing after
+     * indexing failed, so the index keeps its last commit and a rerun
+     * resumes from it.
+     * 
+     * @param failure - Exception, why indexing failed, which any failure
+     *                to roll back is added to.
+     */
+    void rollbackWriter(Exception failure) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.rollback();
+        }
+        catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Commits the IndexWriter along with the files finished so far,
+     * timing the commit.
+     * 
+     * Every file in the manifest had all of its documents added before the
+     * manifest was copied, so the commit holds all of them.
+     * 
+     * @throws IOException
+     */
+    private void commit() throws IOException {
+        long start = System.nanoTime();
+        writer.commit(manifest.toCommitData());
+        metrics.record("index.commit", System.nanoTime() - start);
+    }
+
+    /**
+     * Determines if a wiki file is in the index with the same contents.
+     * 
+     * @param wikiFile - File, the wiki file to check.
+     * @return boolean - true if the file can be skipped.
+     * @throws IOException
+     */
+    private boolean isUnchanged(File wikiFile) throws IOException {
+        return hasIndexed(wikiFile.getName()) && isUnchanged(wikiFile.getName(), IndexManifest.checksum(wikiFile));
+    }
+
+    /**
+     * Determines if any version of a wiki file is in the index.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @return boolean - true if the file is in the manifest.
+     */
+    boolean hasIndexed(String fileName) {
+        return manifest.get(fileName) != null;
+    }
+
+    /**
+     * Determines if a wiki file with the given checksum is in the index,
+     * counting it as skipped if it is.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @param checksum - long, the checksum of its current contents.
+     * @return boolean - true if the file can be skipped.
+     */
+    boolean isUnchanged(String fileName, long checksum) {
+        IndexManifest.Entry entry = manifest.get(fileName);
+        if (entry != null && entry.getChecksum() == checksum) {
+            skippedFiles.incrementAndGet();
+            metrics.increment("index.filesSkipped");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the documents of every recorded wiki file that no longer
+     * exists.
+     * 
+     * @param wikiFiles - File Array, the wiki files that exist.
+     * @return int - the number of files removed.
+     * @throws IOException
+     */
+    int removeDeletedFiles(File[] wikiFiles) throws IOException {
+        Set<String> present = new HashSet<>();
+        for (File f : wikiFiles) {
+            present.add(f.getName());
+        }
+        int removed = 0;
+        for (String fileName : new ArrayList<>(manifest.fileNames())) {
+            if (!present.contains(fileName)) {
+                writer.deleteDocuments(new Term(SOURCE_FIELD, fileName));
+                manifest.remove(fileName);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Indexes the wiki files on a fixed pool of worker threads that all
+     * feed the shared IndexWriter.
+     * 
+     * Each worker parses its file independently, then waits for the worker
+     * of the previous file to publish the first docID after its articles.
+     * Only that handoff is ordered; analysis and addDocument run
+     * concurrently, and the docIDs match a sequential run.
+     * 
+     * @param wikiFiles - File Array, the wiki files to index, in order.
+     * @throws IOException
+     */
+    private void indexWikiParallel(File[] wikiFiles) throws IOException {
+        List<CompletableFuture<Integer>> firstDocIds = new ArrayList<>();
+        for (int i = 0; i <= wikiFiles.length; i++) {
+            firstDocIds.add(new CompletableFuture<>());
+        }
+        firstDocIds.get(0).complete(docId);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < wikiFiles.length; i++) {
+            File f = wikiFiles[i];
+            CompletableFuture<Integer> first = firstDocIds.get(i);
+            CompletableFuture<Integer> next = firstDocIds.get(i + 1);
+            tasks.add(pool.submit(() -> {
+                List<WikiArticle> articles;
+                Checksum checksum = new CRC32C();
+                boolean unchanged;
+                int firstDocId;
+                try {
+                    unchanged = isUnchanged(f);
+                    if (unchanged) {
+                        articles = Collections.emptyList();
+                    }
+                    else {
+                        System.out.println("*****Indexing document: " + f.getName() + "*****");
+                        articles = parseWikiFile(f, checksum);
+                    }
+                    IndexManifest.Entry previous = unchanged ? null : reusableEntry(f.getName(), articles.size());
+                    int nextDocId = first.join();
+                    if (previous != null) {
+                        firstDocId = previous.getFirstDocId();
+                        next.complete(nextDocId);
+                    }
+                    else {
+                        firstDocId = nextDocId;
+                        next.complete(nextDocId + articles.size());
+                    }
+                }
+                catch (Throwable t) {
+                    // unblock the workers waiting on this file
+                    next.completeExceptionally(t);
+                    throw t;
+                }
+                if (!unchanged) {
+                    writeArticles(f.getName(), articles, firstDocId);
+                    finishFile(f.getName(), checksum.getValue(), articles.size(), firstDocId);
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        try {
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", e);
+        }
+        catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new IOException("Failed to index wiki files", e.getCause());
+        }
+        docId = firstDocIds.get(wikiFiles.length).join();
+    }
+
     /**
      * Adds a given file to the index. Any categories are added to
      * the 'categories' section of a document.
@@ -133,63 +616,171 @@ public class IndexBuilder {
      *                      text to be parsed.
      * @throws IOException
      */
-    private void addToIndex(File wikiFile) throws IOException {
-        // template for each document
-        Document doc = new Document();
+    void addToIndex(File wikiFile) throws IOException {
+        Checksum checksum = new CRC32C();
+        List<WikiArticle> articles = parseWikiFile(wikiFile, checksum);
+        writeFile(wikiFile.getName(), articles, checksum.getValue());
+    }
 
-        String title = "";
-        String body = "";
-        String categories = "";
+    /**
+     * Writes the parsed articles of a wiki file and records the file as
+     * indexed. The articles keep the docIDs of the file's previous version
+     * if it had at least as many, and follow those written so far if not.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @param articles - List, the articles of the file.
+     * @param checksum - long, the checksum of the file's contents.
+     * @throws IOException
+     */
+    void writeFile(String fileName, List<WikiArticle> articles, long checksum) throws IOException {
+        IndexManifest.Entry previous = reusableEntry(fileName, articles.size());
+        int firstDocId = previous != null ? previous.getFirstDocId() : docId;
+        writeArticles(fileName, articles, firstDocId);
+        finishFile(fileName, checksum, articles.size(), firstDocId);
+        if (previous == null) {
+            docId += articles.size();
+        }
+    }
 
-        boolean parsingFirstDoc = true;
+    /**
+     * Finds the recorded version of a changed wiki file whose docIDs its new
+     * articles can take over.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @param documents - int, the number of articles it now has.
+     * @return IndexManifest.Entry - the recorded version, or null if the
+     *                               file is new or has grown.
+     */
+    private IndexManifest.Entry reusableEntry(String fileName, int documents) {
+        IndexManifest.Entry previous = appending ? manifest.get(fileName) : null;
+        return previous != null && documents <= previous.getDocuments() ? previous : null;
+    }
+
+    /**
+     * Records a wiki file as fully written, after deleting any articles
+     * left in the index from a longer version of it, and commits if the
+     * commit policy asks to.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @param checksum - long, the checksum of its contents.
+     * @param documents - int, the number of articles written.
+     * @param firstDocId - int, the docID of its first article.
+     * @throws IOException
+     */
+    private void finishFile(String fileName, long checksum, int documents, int firstDocId) throws IOException {
+        IndexManifest.Entry previous = manifest.get(fileName);
+        if (appending && (previous == null || previous.getDocuments() > documents)) {
+            writer.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term(SOURCE_FIELD, fileName)), Occur.FILTER)
+                    .add(IntPoint.newRangeQuery(ORDINAL_FIELD, documents, Integer.MAX_VALUE), Occur.FILTER)
+                    .build());
+        }
+        manifest.put(fileName, new IndexManifest.Entry(checksum, documents, firstDocId));
+        writtenDocuments.addAndGet(documents);
+        if (commitPolicy.fileFinished()) {
+            commit();
+        }
+    }
 
-        Scanner sc = new Scanner(wikiFile);
-        while (sc.hasNextLine()) {
-            String line = sc.nextLine().strip();
-            if (line.isBlank())
-                continue;
+    /**
+     * Splits a wiki file into its articles. Each article starts at a title
+     * line, and every line after it, categories included, makes up its body.
+     * 
+     * The file is read as UTF-8 through a buffered reader, and bodies are
+     * built in a single buffer that is reused for every article.
+     * 
+     * @param wikiFile - File, the wikipedia file to parse.
+     * @param checksum - Checksum, updated with every byte of the file.
+     * @return List - the articles in the order they appear in the file.
+     * @throws IOException
+     */
+    List<WikiArticle> parseWikiFile(File wikiFile, Checksum checksum) throws IOException {
+        long start = System.nanoTime();
+        List<WikiArticle> articles = new ArrayList<>();
+        WikiArticle article = null;
+        StringBuilder body = new StringBuilder(64 * 1024);
 
-            if (isTitle(line)) {
-                // Write previous document to index
-                if (!parsingFirstDoc) {
-                    addBodyAndWrite(doc, body, writer);
-                }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new CheckedInputStream(
+                Files.newInputStream(wikiFile.toPath()), checksum), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isBlank())
+                    continue;
 
-                // Create new document
-                doc = new Document();
-                title = line.substring(2, line.length() - 2);
-                body = "";
+                if (isTitle(line)) {
+                    // Finish previous article
+                    if (article != null) {
+                        article.setBody(body.toString());
+                    }
 
-                addDocIdAndTitle(doc, docId, title);
+                    // Start new article
+                    article = new WikiArticle(line.substring(2, line.length() - 2));
+                    articles.add(article);
+                    body.setLength(0);
+                    continue;
+                }
 
-                docId++;
-                parsingFirstDoc = false;
+                // text before the first title does not belong to any article
+                if (article == null)
+                    continue;
 
-                continue;
-            }
+                // extracts categories from article, adds it to category field of doc
+                if (isCategory(line)) {
+                    article.addCategories(line.substring("CATEGORIES: ".length(), line.length()));
+                }
 
-            // extracts categories from article, adds it to category field of doc
-            if (isCategory(line)) {
-                categories = line.substring("CATEGORIES: ".length(), line.length());
-                FieldType fieldType = new FieldType();
-                fieldType.setStored(true);
-                fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-                doc.add(new Field("categories", categories, fieldType));
-            }
+                // remove markers from subsection headings
+                if (isSubsectionHeader(line)) {
+                    line = line.replace("=", "");
+                }
 
-            // remove markers from subsection headings
-            if (isSubsectionHeader(line)) {
-                line = line.replace("=", "");
+                // to avoid newline character in the beginning of the body
+                if (body.length() > 0) {
+                    body.append('\n');
+                }
+                body.append(line);
             }
+        }
 
-            // to avoid newline character in the beginning of the body
-            body = body.equals("") ? line : body + "\n" + line;
+        // Finish the last article
+        if (article != null) {
+            article.setBody(body.toString());
         }
+        metrics.record("index.parse", System.nanoTime() - start);
+        metrics.increment("index.files");
+        return articles;
+    }
 
-        // Add the last document
-        addBodyAndWrite(doc, body, writer);
-        writer.commit();
-        sc.close();
+    /**
+     * Writes a list of parsed articles to the index, numbering them from
+     * the given docID. Each article is keyed by its wiki file and its
+     * position in that file.
+     * 
+     * @param fileName - String, the name of the wiki file.
+     * @param articles - List, the articles to write.
+     * @param firstDocId - int, the docID of the first article.
+     * @throws IOException
+     */
+    private void writeArticles(String fileName, List<WikiArticle> articles, int firstDocId) throws IOException {
+        for (int ordinal = 0; ordinal < articles.size(); ordinal++) {
+            WikiArticle article = articles.get(ordinal);
+            int id = firstDocId + ordinal;
+            Document doc = new Document();
+            doc.add(new StringField(SOURCE_FIELD, fileName, Field.Store.NO));
+            doc.add(new StringField(KEY_FIELD, fileName + "#" + ordinal, Field.Store.NO));
+            doc.add(new IntPoint(ORDINAL_FIELD, ordinal));
+            addDocIdAndTitle(doc, id, article.getTitle());
+            for (String categories : article.getCategories()) {
+                doc.add(schema.categoriesField(categories));
+            }
+            addBodyAndWrite(doc, id, article.getBody(), fileName + "#" + ordinal);
+            metrics.increment("index.documents");
+            metrics.add("index.bodyChars", article.getBody().length());
+            if (commitPolicy.documentAdded(article.getBody().length())) {
+                commit();
+            }
+        }
     }
 
     /**
@@ -227,74 +818,57 @@ public class IndexBuilder {
     /**
      * Adds a title and docID to a given document.
      * 
+     * Both are also written as doc values, so QueryEngine can read the
+     * title of a hit without loading the stored document, along with the
+     * key AnswerMatcher compares the title by.
+     * 
      * @param doc - Document, the document to add to.
      * @param docId - int, the docID to assign to the document.
      * @param title - String, the title field to be assigned to the document.
      */
     private void addDocIdAndTitle(Document doc, int docId, String title) {
-        if (positional) {
-            FieldType fieldType = new FieldType();
-            fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-            fieldType.setStored(true);
-            doc.add(new Field("docID", Integer.toString(docId), fieldType));
-            doc.add(new Field("title", title, fieldType));
-        } else {
-            doc.add(new StringField("docId", Integer.toString(docId), Field.Store.YES));
-            doc.add(new TextField("title", title, Field.Store.YES));
-        }
+        doc.add(schema.docIdField(docId));
+        doc.add(new NumericDocValuesField(schema.getDocIdName(), docId));
+        doc.add(schema.titleField(title));
+        doc.add(new SortedDocValuesField(TitleLookup.FIELD, new BytesRef(title)));
+        doc.add(new NumericDocValuesField(TitleLookup.KEY_FIELD, AnswerMatcher.titleKey(title)));
     }
 
     /**
      * Adds the body text section to it's respective document. 
      * 
-     * Might lemmatize, create the positional information or simply create the 
-     * standard tokens for the document, the options for which are extracted
-     * from the constructor of the class.
+     * Might lemmatize the body first, the options for which are extracted
+     * from the constructor of the class. Which postings are indexed for it
+     * and whether it is stored is up to the field schema.
+     * 
+     * When adding to an existing index, the document replaces any earlier
+     * version with the same key.
      * 
      * @param doc - Document, the doc to add to.
+     * @param docId - int, the docID of the document, which picks its shard.
      * @param body - String, contains the main body of text.
-     * @param writer - IndexWriter, the index to add to.
+     * @param key - String, the stable key of the document.
      * @throws IOException
      */
-    private void addBodyAndWrite(Document doc, String body, IndexWriter writer) throws IOException {
+    private void addBodyAndWrite(Document doc, int docId, String body, String key) throws IOException {
         if (lemmatize) {
-            body = lemmatizeString(body);
+            long start = System.nanoTime();
+            body = lemmatizer.lemmatize(body);
+            metrics.record("index.lemmatize", System.nanoTime() - start);
         }
-        if (positional) {
-            FieldType fieldType = new FieldType();
-            fieldType.setStored(true);
-            fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-            doc.add(new Field("body", body, fieldType));
-
-        } else {
-            doc.add(new TextField("body", body, Field.Store.YES));
+        doc.add(schema.bodyField(body));
+        if (schema.hasShingles()) {
+            doc.add(schema.shinglesField(body));
         }
-        writer.addDocument(doc);
-    }
-
-    /**
-     * Lemmatizes a given string utilizing the openNLP lemmatizer.
-     * 
-     * @param str - String, the string to lemmatize.
-     * @return ret - String, the string once processed.
-     */
-    private String lemmatizeString(String str) {
-        String[] tokens = str.split("[\\s@&.?$+-/=]+");
-        String tags[] = posTagger.tag(tokens);
-        String[] lemmas = lemmatizer.lemmatize(tokens, tags);
-        String ret = "";
-        for (int i = 0; i < lemmas.length; i++) {
-            if (lemmas[i].equals("O")) {
-                ret = ret + tokens[i];
-            }
-            else {
-                ret = ret + lemmas[i];
-            }
-            if (i != lemmas.length - 1) {
-                ret = ret + " ";
-            }
+        // analysis happens inside addDocument, so it is timed with it
+        long start = System.nanoTime();
+        if (appending) {
+            writer.updateDocument(docId, new Term(KEY_FIELD, key), doc);
+        }
+        else {
+            writer.addDocument(docId, doc);
         }
-        return ret;
+        metrics.record("index.addDocument", System.nanoTime() - start);
     }
 
 }
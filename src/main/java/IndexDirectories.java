@@ -0,0 +1,235 @@
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Opens index directories for searching and warms them before the first
+ * query.
+ *
+ * The following directory modes are available:
+ *  auto - lets Lucene choose, as FSDirectory.open does
+ *  mmap - memory maps the index and preloads it into the page cache
+ *  nio - reads the index through NIO file channels
+ *  heap - copies the latest commit into memory on the Java heap
+ *  offheap - copies the latest commit into direct (off-heap) buffers
+ *
+ * An index split into N shards keeps each shard as a complete index in
+ * its own subdirectory, 'shard-0' to 'shard-N-1'; an index of one shard
+ * is written straight into the index directory.
+ *
+ * The heap and offheap copies are snapshots for small indexes; they do not
+ * see later changes to the index on disk.
+ *
+ * The following methods are defined:
+ *  - open - opens an index directory in the given mode.
+ *  - warm - reads the postings and norms of the searched fields.
+ *  - fileSizes - the size of the latest commit by file extension.
+ *  - shardPaths - the directories of the shards of an index.
+ */
+public class IndexDirectories {
+    // the fields QueryEngine searches or reads
+    private static final String[] WARM_FIELDS = { "body", "title", "categories" };
+    private static final String SHARD_PREFIX = "shard-";
+
+    /**
+     * Opens an index directory in the given mode.
+     *
+     * @param path - Path, the location of the index.
+     * @param mode - String, one of auto, mmap, nio, heap or offheap.
+     * @return Directory - the opened directory.
+     * @throws IOException
+     */
+    public static Directory open(Path path, String mode) throws IOException {
+        if (mode.equals("auto")) {
+            return FSDirectory.open(path);
+        }
+        else if (mode.equals("mmap")) {
+            MMapDirectory directory = new MMapDirectory(path);
+            directory.setPreload(true);
+            return directory;
+        }
+        else if (mode.equals("nio")) {
+            return new NIOFSDirectory(path);
+        }
+        else if (mode.equals("heap")) {
+            return copyLatestCommit(path, new ByteBuffersDirectory());
+        }
+        else if (mode.equals("offheap")) {
+            return copyLatestCommit(path, new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+                    () -> new ByteBuffersDataOutput(ByteBuffersDataOutput.DEFAULT_MIN_BITS_PER_BLOCK,
+                            ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+                            ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+                    ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS));
+        }
+        throw new IllegalArgumentException("Unknown directory mode: " + mode);
+    }
+
+    /**
+     * Copies the files of the latest commit of an on-disk index into
+     * another directory.
+     *
+     * @param path - Path, the location of the index.
+     * @param target - Directory, the directory to copy into.
+     * @return Directory - the target directory.
+     * @throws IOException
+     */
+    private static Directory copyLatestCommit(Path path, Directory target) throws IOException {
+        try (Directory source = FSDirectory.open(path)) {
+            for (String file : SegmentInfos.readLatestCommit(source).files(true)) {
+                target.copyFrom(source, file, file, IOContext.READONCE);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Reads every posting, position and norm of the fields QueryEngine
+     * searches, so that the first query does not pay to fault them in.
+     *
+     * @param reader - IndexReader, the reader to warm.
+     * @return long - the number of postings read.
+     * @throws IOException
+     */
+    public static long warm(IndexReader reader) throws IOException {
+        long postings = 0;
+        PostingsEnum postingsEnum = null;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            LeafReader leafReader = leaf.reader();
+            for (String field : WARM_FIELDS) {
+                FieldInfo info = leafReader.getFieldInfos().fieldInfo(field);
+                Terms terms = leafReader.terms(field);
+                if (info == null || terms == null) {
+                    continue;
+                }
+                boolean positions = info.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
+                int flags = positions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS;
+                TermsEnum termsEnum = terms.iterator();
+                while (termsEnum.next() != null) {
+                    postingsEnum = termsEnum.postings(postingsEnum, flags);
+                    while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                        postings++;
+                        if (positions) {
+                            for (int i = postingsEnum.freq(); i > 0; i--) {
+                                postingsEnum.nextPosition();
+                            }
+                        }
+                    }
+                }
+                NumericDocValues norms = leafReader.getNormValues(field);
+                if (norms != null) {
+                    while (norms.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                        norms.longValue();
+                    }
+                }
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Sums the size of the files of the latest commit by file extension,
+     * e.g. 'fdt' for stored fields or 'pos' for positions. The files inside
+     * compound segments are counted under their own extensions.
+     *
+     * @param directory - Directory, the index directory.
+     * @return Map - the bytes of each file extension.
+     * @throws IOException
+     */
+    public static Map<String, Long> fileSizes(Directory directory) throws IOException {
+        Map<String, Long> sizes = new TreeMap<>();
+        for (SegmentCommitInfo segment : SegmentInfos.readLatestCommit(directory)) {
+            if (segment.info.getUseCompoundFile()) {
+                try (Directory compound = segment.info.getCodec().compoundFormat()
+                        .getCompoundReader(directory, segment.info, IOContext.READONCE)) {
+                    addFileSizes(compound, Arrays.asList(compound.listAll()), sizes);
+                }
+            }
+            else {
+                addFileSizes(directory, segment.files(), sizes);
+            }
+        }
+        return sizes;
+    }
+
+    private static void addFileSizes(Directory directory, Iterable<String> files, Map<String, Long> sizes)
+            throws IOException {
+        for (String file : files) {
+            sizes.merge(IndexFileNames.getExtension(file), directory.fileLength(file), Long::sum);
+        }
+    }
+
+    /**
+     * Returns the directories the shards of an index are written to.
+     *
+     * @param indexPath - Path, the index directory.
+     * @param shards - int, the number of shards.
+     * @return List - the index directory itself for one shard, otherwise
+     *         its shard subdirectories in order.
+     */
+    public static List<Path> shardPaths(Path indexPath, int shards) {
+        if (shards == 1) {
+            return Collections.singletonList(indexPath);
+        }
+        List<Path> paths = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            paths.add(indexPath.resolve(SHARD_PREFIX + shard));
+        }
+        return paths;
+    }
+
+    /**
+     * Finds the shards of an existing index.
+     *
+     * @param indexPath - Path, the index directory.
+     * @return List - the shard directories in order, the index directory
+     *         itself if it is not sharded, or an empty list if there is no
+     *         index yet.
+     * @throws IOException
+     */
+    public static List<Path> shardPaths(Path indexPath) throws IOException {
+        int shards = 0;
+        while (Files.isDirectory(indexPath.resolve(SHARD_PREFIX + shards))) {
+            shards++;
+        }
+        if (shards > 0) {
+            return shardPaths(indexPath, shards);
+        }
+        if (Files.isDirectory(indexPath)) {
+            try (Directory directory = FSDirectory.open(indexPath)) {
+                if (DirectoryReader.indexExists(directory)) {
+                    return Collections.singletonList(indexPath);
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+}
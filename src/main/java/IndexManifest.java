@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Records which wiki files an index holds, so that IndexBuilder can skip
+ * files that have not changed since they were indexed.
+ *
+ * The manifest is stored in the commit user data of the index, one entry
+ * per wiki file: 'file:<name>' -> '<checksum>,<documents>,<first docID>'.
+ * The field schema the index was built with is stored under 'schema'.
+ * A file is only recorded once all of its articles have been written, so
+ * the manifest of any commit, including the last one before a crash, only
+ * lists files that are completely in that commit.
+ *
+ * The following methods are defined:
+ *  - read - reads the manifest from commit user data.
+ *  - toCommitData - writes the manifest as commit user data.
+ *  - get / put / remove - look up and record wiki files.
+ *  - getSchema / setSchema - the field schema of the index.
+ *  - nextDocId - the first docID not used by a recorded file.
+ *  - checksum - computes the checksum of a file.
+ */
+public class IndexManifest {
+    private static final String FILE_PREFIX = "file:";
+    private static final String SCHEMA_KEY = "schema";
+
+    // manifests written before field schemas existed hold full indexes
+    private String schema = FieldSchema.FULL;
+
+    private final Map<String, Entry> files = new ConcurrentHashMap<>();
+
+    /**
+     * The state of a single indexed wiki file.
+     */
+    public static final class Entry {
+        private final long checksum;
+        private final int documents;
+        private final int firstDocId;
+
+        public Entry(long checksum, int documents, int firstDocId) {
+            this.checksum = checksum;
+            this.documents = documents;
+            this.firstDocId = firstDocId;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public int getFirstDocId() {
+            return firstDocId;
+        }
+    }
+
+    /**
+     * Reads the manifest from the user data of a commit, ignoring any
+     * entries that are not about wiki files or the field schema.
+     *
+     * @param commitData - Iterable, the commit user data.
+     * @return IndexManifest - the manifest, empty if nothing was recorded.
+     */
+    public static IndexManifest read(Iterable<Map.Entry<String, String>> commitData) {
+        IndexManifest manifest = new IndexManifest();
+        if (commitData == null) {
+            return manifest;
+        }
+        for (Map.Entry<String, String> data : commitData) {
+            if (data.getKey().equals(SCHEMA_KEY)) {
+                manifest.setSchema(data.getValue());
+            }
+            else if (data.getKey().startsWith(FILE_PREFIX)) {
+                String[] state = data.getValue().split(",");
+                manifest.put(data.getKey().substring(FILE_PREFIX.length()), new Entry(Long.parseLong(state[0]),
+                        Integer.parseInt(state[1]), Integer.parseInt(state[2])));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest as commit user data.
+     *
+     * @return Map - the commit user data.
+     */
+    public Map<String, String> toCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(SCHEMA_KEY, schema);
+        for (Map.Entry<String, Entry> file : files.entrySet()) {
+            Entry entry = file.getValue();
+            commitData.put(FILE_PREFIX + file.getKey(),
+                    entry.getChecksum() + "," + entry.getDocuments() + "," + entry.getFirstDocId());
+        }
+        return commitData;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    public Entry get(String fileName) {
+        return files.get(fileName);
+    }
+
+    public void put(String fileName, Entry entry) {
+        files.put(fileName, entry);
+    }
+
+    public void remove(String fileName) {
+        files.remove(fileName);
+    }
+
+    public Set<String> fileNames() {
+        return files.keySet();
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    /**
+     * Returns the first docID after those of every recorded file.
+     *
+     * @return int - the next docID to assign.
+     */
+    public int nextDocId() {
+        int next = 0;
+        for (Entry entry : files.values()) {
+            next = Math.max(next, entry.getFirstDocId() + entry.getDocuments());
+        }
+        return next;
+    }
+
+    /**
+     * Computes the CRC-32C checksum of a file's bytes.
+     *
+     * @param file - File, the file to read.
+     * @return long - the checksum.
+     * @throws IOException
+     */
+    public static long checksum(File file) throws IOException {
+        Checksum checksum = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                checksum.update(buffer, 0, read);
+            }
+        }
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A bounded, thread-safe cache of lemmas keyed on (token, POS tag).
+ *
+ * Entries are spread over a fixed number of segments, each an access-ordered
+ * LinkedHashMap guarded by its own lock, so lookups from different threads
+ * rarely contend. Each segment evicts its least recently used entry once it
+ * is full. Entries are keyed on the token and tag themselves, so a lookup
+ * builds no string.
+ *
+ * The following methods are defined:
+ *  - get - looks up a lemma, loading and caching it on a miss.
+ *  - getHits / getMisses - the lookup counters.
+ *  - hitRatio - the fraction of lookups served from the cache.
+ */
+public class LemmaCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries - int, the maximum number of lemmas to hold.
+     */
+    public LemmaCache(int maxEntries) {
+        if (maxEntries < SEGMENTS) {
+            throw new IllegalArgumentException("Lemma cache must hold at least " + SEGMENTS + " entries");
+        }
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxEntries / SEGMENTS);
+        }
+    }
+
+    /**
+     * Returns the lemma of a token with the given POS tag. On a miss the
+     * loader is called outside of any lock, so two threads missing on the
+     * same key at once may both load it.
+     *
+     * @param token - String, the token to lemmatize.
+     * @param tag - String, the POS tag of the token.
+     * @param loader - BiFunction, computes the lemma of a (token, tag) pair.
+     * @return String - the lemma.
+     */
+    public String get(String token, String tag, BiFunction<String, String, String> loader) {
+        Key key = new Key(token, tag);
+        Segment segment = segments[(key.hash & 0x7fffffff) % SEGMENTS];
+        String lemma;
+        synchronized (segment) {
+            lemma = segment.get(key);
+        }
+        if (lemma != null) {
+            hits.increment();
+            return lemma;
+        }
+        misses.increment();
+        lemma = loader.apply(token, tag);
+        synchronized (segment) {
+            segment.put(key, lemma);
+        }
+        return lemma;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return double - the fraction of lookups served from the cache, or 0
+     *         if there were no lookups.
+     */
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hit ratio=%.3f", getHits(), getMisses(), hitRatio());
+    }
+
+    /**
+     * A (token, POS tag) pair.
+     */
+    private static final class Key {
+        private final String token;
+        private final String tag;
+        private final int hash;
+
+        Key(String token, String tag) {
+            this.token = token;
+            this.tag = tag;
+            this.hash = 31 * token.hashCode() + tag.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && token.equals(key.token) && tag.equals(key.tag);
+        }
+    }
+
+    /**
+     * One segment of the cache, evicting its least recently used entry
+     * once full.
+     */
+    private static class Segment extends LinkedHashMap<Key, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Measures how indexing and querying scale with the size of the corpus.
+ *
+ * For every corpus size, a synthetic corpus and its questions are generated
+ * with CorpusGenerator, indexed with IndexBuilder and asked through
+ * QueryEngine. The throughput and latency of each size are printed as a
+ * table and a bar chart, and written as CSV for plotting.
+ *
+ * The following methods are defined:
+ *  - main - runs the load test from the command line.
+ *  - run - generates, indexes and queries a corpus of one size.
+ *  - ask - asks every question and records its latency and rank.
+ */
+public class LoadTest {
+    private static final String CSV_HEADER = "articles,generateSeconds,indexSeconds,docsPerSecond,indexMB,"
+            + "questions,querySeconds,questionsPerSecond,p50Ms,p99Ms,precisionAt1,hitsAt10";
+    private static final int HITS = 10;
+    private static final int BAR_WIDTH = 40;
+
+    private final String indexType;
+    private final String scoringMethod;
+    private final int questionCount;
+    private final int articlesPerFile;
+    private final int indexThreads;
+    private final int queryThreads;
+    private final Path workDirectory;
+    private final boolean keep;
+
+    private LoadTest(Map<String, String> options) {
+        indexType = options.getOrDefault("type", "positional");
+        scoringMethod = options.getOrDefault("scoring", "bm25");
+        questionCount = Integer.parseInt(options.getOrDefault("questions", "1000"));
+        articlesPerFile = Integer.parseInt(options.getOrDefault("articlesPerFile", "1000"));
+        indexThreads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        queryThreads = Integer.parseInt(options.getOrDefault("queryThreads", "1"));
+        workDirectory = Paths.get(options.getOrDefault("workDir", "target/loadtest"));
+        keep = Boolean.parseBoolean(options.getOrDefault("keep", "false"));
+    }
+
+    /**
+     * Runs the load test. Arguments are options in the form 'name=value':
+     *  sizes - comma separated corpus sizes in articles
+     *          (default 10000,100000,1000000)
+     *  type - index type (default positional)
+     *  scoring - scoring method (default bm25)
+     *  questions - number of questions per corpus (default 1000)
+     *  articlesPerFile - number of articles in each wiki file (default 1000)
+     *  threads - number of indexing threads (default 1)
+     *  queryThreads - number of questions asked at once (default 1)
+     *  workDir - where corpora and indexes are written (default target/loadtest)
+     *  output - CSV file of the results (default workDir/loadtest.csv)
+     *  keep - whether to keep each corpus and index afterwards (default false)
+     *
+     * @param args - String Array, the load test options.
+     */
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = CorpusGenerator.parseOptions(args);
+            LoadTest loadTest = new LoadTest(options);
+            List<double[]> rows = new ArrayList<>();
+            for (String size : options.getOrDefault("sizes", "10000,100000,1000000").split(",")) {
+                rows.add(loadTest.run(Long.parseLong(size.trim())));
+            }
+            Path output = options.containsKey("output") ? Paths.get(options.get("output"))
+                    : loadTest.workDirectory.resolve("loadtest.csv");
+            writeCsv(output, rows);
+            printTable(rows);
+            System.out.println("Results written to " + output);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error occured when running load test");
+        }
+    }
+
+    /**
+     * Generates, indexes and queries a corpus of one size.
+     *
+     * @param articles - long, the number of articles in the corpus.
+     * @return double Array - the row of results, in CSV_HEADER order.
+     * @throws Exception
+     */
+    private double[] run(long articles) throws Exception {
+        Path corpusDirectory = workDirectory.resolve("corpus-" + articles);
+        Path wikiPath = corpusDirectory.resolve("wiki-data");
+        Path indexPath = corpusDirectory.resolve(indexType + "-index");
+        deleteRecursively(corpusDirectory);
+
+        long start = System.nanoTime();
+        List<Question> questions = new CorpusGenerator(CorpusGenerator.DEFAULT_SEED)
+                .writeCorpus(wikiPath, articles, articlesPerFile, questionCount);
+        double generateSeconds = (System.nanoTime() - start) / 1e9;
+
+        IndexBuilder indexBuilder = new IndexBuilder(indexType, indexPath.toString(), wikiPath.toString());
+        indexBuilder.setThreads(indexThreads);
+        start = System.nanoTime();
+        indexBuilder.indexWiki();
+        double indexSeconds = (System.nanoTime() - start) / 1e9;
+        double indexMB = sizeOf(indexPath) / (1024.0 * 1024.0);
+
+        QueryEngine queryEngine = new QueryEngine(indexType, scoringMethod, indexPath.toString());
+        long[] latencies = new long[questions.size()];
+        int[] ranks = new int[questions.size()];
+        start = System.nanoTime();
+        try {
+            queryEngine.open();
+            ask(queryEngine, questions, latencies, ranks);
+        }
+        finally {
+            queryEngine.close();
+        }
+        double querySeconds = (System.nanoTime() - start) / 1e9;
+
+        if (!keep) {
+            deleteRecursively(corpusDirectory);
+        }
+        int atOne = 0;
+        int inTop = 0;
+        for (int rank : ranks) {
+            atOne += rank == 1 ? 1 : 0;
+            inTop += rank > 0 ? 1 : 0;
+        }
+        Arrays.sort(latencies);
+        int asked = Math.max(questions.size(), 1);
+        return new double[] { articles, generateSeconds, indexSeconds, articles / indexSeconds, indexMB,
+                questions.size(), querySeconds, questions.size() / querySeconds,
+                QueryEngine.percentile(latencies, 0.50) / 1e6, QueryEngine.percentile(latencies, 0.99) / 1e6,
+                atOne / (double) asked, inTop / (double) asked };
+    }
+
+    /**
+     * Asks every question, on queryThreads threads, and records its latency
+     * and the rank of its answer.
+     *
+     * @param queryEngine - QueryEngine, the engine to ask.
+     * @param questions - List, the questions to ask.
+     * @param latencies - long Array, receives the latency of each question.
+     * @param ranks - int Array, receives the rank of each answer, or 0 if
+     *              it was not in the top hits.
+     * @throws IOException
+     */
+    private void ask(QueryEngine queryEngine, List<Question> questions, long[] latencies, int[] ranks)
+            throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(queryThreads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < queryThreads; t++) {
+            int first = t;
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i < questions.size(); i += queryThreads) {
+                    Question question = questions.get(i);
+                    long start = System.nanoTime();
+                    List<SearchHit> hits = queryEngine.search(question.getCategory(), question.getClue(), null, HITS);
+                    latencies[i] = System.nanoTime() - start;
+                    ranks[i] = question.getAnswerMatcher().position(hits);
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching", e);
+        }
+        catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new IOException("Failed to ask questions", e.getCause());
+        }
+    }
+
+    private static void writeCsv(Path output, List<double[]> rows) throws IOException {
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            writer.println(CSV_HEADER);
+            for (double[] row : rows) {
+                writer.printf("%d,%.3f,%.3f,%.1f,%.1f,%d,%.3f,%.1f,%.3f,%.3f,%.4f,%.4f\n", (long) row[0], row[1],
+                        row[2], row[3], row[4], (long) row[5], row[6], row[7], row[8], row[9], row[10], row[11]);
+            }
+        }
+    }
+
+    /**
+     * Prints the results as a table, followed by bars of indexing and
+     * query throughput against corpus size.
+     *
+     * @param rows - List, the rows of results.
+     */
+    private static void printTable(List<double[]> rows) {
+        System.out.printf("%12s %10s %10s %10s %10s %10s %8s %8s\n",
+                "articles", "index s", "docs/s", "index MB", "q/s", "p50 ms", "p99 ms", "P@1");
+        double maxDocs = 0;
+        double maxQuestions = 0;
+        for (double[] row : rows) {
+            System.out.printf("%12d %10.1f %10.1f %10.1f %10.1f %10.2f %8.2f %8.3f\n",
+                    (long) row[0], row[2], row[3], row[4], row[7], row[8], row[9], row[10]);
+            maxDocs = Math.max(maxDocs, row[3]);
+            maxQuestions = Math.max(maxQuestions, row[7]);
+        }
+        System.out.println("\nIndexing throughput (docs/s)");
+        for (double[] row : rows) {
+            System.out.printf("%12d |%s %.1f\n", (long) row[0], bar(row[3], maxDocs), row[3]);
+        }
+        System.out.println("\nQuery throughput (questions/s)");
+        for (double[] row : rows) {
+            System.out.printf("%12d |%s %.1f\n", (long) row[0], bar(row[7], maxQuestions), row[7]);
+        }
+    }
+
+    private static String bar(double value, double max) {
+        char[] bar = new char[max > 0 ? (int) Math.round(BAR_WIDTH * value / max) : 0];
+        Arrays.fill(bar, '#');
+        return new String(bar);
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
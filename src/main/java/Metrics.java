@@ -0,0 +1,287 @@
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Timers, counters and gauges for the stages of indexing and querying.
+ *
+ * Timers record nanosecond durations in HDR histograms, so percentiles
+ * stay accurate without keeping every sample, and any thread can record
+ * without locking. Counters are LongAdders. Gauges read a value owned by
+ * someone else, such as a cache, whenever the metrics are read.
+ *
+ * The metrics can be written as JSON at the end of a run, and are exposed
+ * through JMX while running as the MBean 'MiniWatson:type=Metrics,name=...',
+ * with attributes such as 'query.search.p99Micros' and 'index.documents'.
+ * Metrics registered while others of the same name still are, such as a
+ * second engine on the same index, get a numbered name like 'name#2'.
+ *
+ * The following methods are defined:
+ *  - record - records the duration of a stage.
+ *  - increment / add - adds to a counter.
+ *  - gauge - registers a value read on demand.
+ *  - register / unregister - exposes the metrics through JMX.
+ *  - toJson / writeJson - dumps the metrics as JSON.
+ */
+public class Metrics implements DynamicMBean {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final String[] TIMER_ATTRIBUTES = { "count", "meanMicros", "p50Micros", "p90Micros",
+            "p99Micros", "maxMicros", "totalMillis" };
+
+    private final String name;
+    private final Map<String, Histogram> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private ObjectName registeredName;
+
+    /**
+     * Constructs an empty set of metrics.
+     *
+     * @param name - String, the name the metrics are reported under.
+     */
+    public Metrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records the duration of one run of a stage.
+     *
+     * @param stage - String, the name of the stage.
+     * @param nanos - long, how long the stage took, in nanoseconds.
+     */
+    public void record(String stage, long nanos) {
+        timers.computeIfAbsent(stage, s -> new ConcurrentHistogram(SIGNIFICANT_DIGITS)).recordValue(Math.max(nanos, 0));
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long amount) {
+        counters.computeIfAbsent(counter, c -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Registers a value that is read whenever the metrics are read.
+     *
+     * @param gauge - String, the name of the gauge.
+     * @param value - LongSupplier, reads the current value.
+     */
+    public void gauge(String gauge, LongSupplier value) {
+        gauges.put(gauge, value);
+    }
+
+    /**
+     * Returns the mean duration of a stage, in nanoseconds.
+     *
+     * @param stage - String, the name of the stage.
+     * @return double - the mean, or 0 if the stage never ran.
+     */
+    public double getMeanNanos(String stage) {
+        Histogram timer = timers.get(stage);
+        return timer == null ? 0 : timer.getMean();
+    }
+
+    /**
+     * Exposes the metrics through the platform MBean server, under the
+     * first of 'name', 'name#2', 'name#3', ... that no other metrics are
+     * registered under. Does nothing if the metrics are already registered.
+     */
+    public synchronized void register() {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (int i = 1; registeredName == null; i++) {
+                ObjectName objectName = objectName(i == 1 ? name : name + "#" + i);
+                try {
+                    server.registerMBean(this, objectName);
+                    registeredName = objectName;
+                }
+                catch (InstanceAlreadyExistsException e) {
+                    // taken by other metrics that are still registered, try the next number
+                }
+            }
+        }
+        catch (JMException e) {
+            System.err.println("Could not register metrics " + name + " with JMX: " + e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were
+     * registered.
+     */
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        }
+        catch (JMException e) {
+            System.err.println("Could not unregister metrics " + name + " from JMX: " + e);
+        }
+        registeredName = null;
+    }
+
+    /**
+     * Returns the name the metrics are registered under in JMX.
+     *
+     * @return ObjectName - the registered name, or null if not registered.
+     */
+    public synchronized ObjectName getObjectName() {
+        return registeredName;
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("MiniWatson:type=Metrics,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Returns every metric by its JMX attribute name: five statistics and
+     * a count for each timer, followed by the counters and gauges.
+     *
+     * @return Map - the value of every attribute, in name order.
+     */
+    private Map<String, Number> attributes() {
+        Map<String, Number> attributes = new TreeMap<>();
+        for (Map.Entry<String, Histogram> timer : timers.entrySet()) {
+            Histogram histogram = timer.getValue().copy();
+            String stage = timer.getKey() + ".";
+            attributes.put(stage + "count", histogram.getTotalCount());
+            attributes.put(stage + "meanMicros", histogram.getMean() / 1e3);
+            attributes.put(stage + "p50Micros", histogram.getValueAtPercentile(50) / 1e3);
+            attributes.put(stage + "p90Micros", histogram.getValueAtPercentile(90) / 1e3);
+            attributes.put(stage + "p99Micros", histogram.getValueAtPercentile(99) / 1e3);
+            attributes.put(stage + "maxMicros", histogram.getMaxValue() / 1e3);
+            attributes.put(stage + "totalMillis", histogram.getMean() * histogram.getTotalCount() / 1e6);
+        }
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            attributes.put(counter.getKey(), counter.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            attributes.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return attributes;
+    }
+
+    /**
+     * Dumps the metrics as a JSON object, with one object per timer and
+     * one number per counter or gauge.
+     *
+     * @return String - the metrics as JSON.
+     */
+    public String toJson() {
+        Map<String, Number> attributes = attributes();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":\"").append(name).append("\",\"timers\":{");
+        String separator = "";
+        for (String stage : timers.keySet()) {
+            json.append(separator).append('"').append(stage).append("\":{");
+            for (int i = 0; i < TIMER_ATTRIBUTES.length; i++) {
+                Number value = attributes.get(stage + "." + TIMER_ATTRIBUTES[i]);
+                json.append(i == 0 ? "" : ",").append('"').append(TIMER_ATTRIBUTES[i]).append("\":")
+                    .append(value instanceof Double ? String.format(Locale.ROOT, "%.3f", value) : value);
+            }
+            json.append('}');
+            separator = ",";
+        }
+        json.append("},\"counters\":{");
+        separator = "";
+        for (Map.Entry<String, Number> attribute : attributes.entrySet()) {
+            if (counters.containsKey(attribute.getKey()) || gauges.containsKey(attribute.getKey())) {
+                json.append(separator).append('"').append(attribute.getKey()).append("\":").append(attribute.getValue());
+                separator = ",";
+            }
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Writes the metrics as JSON to a file.
+     *
+     * @param path - Path, the file to write.
+     * @throws IOException
+     */
+    public void writeJson(Path path) throws IOException {
+        Files.write(path, (toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("Metrics written to " + path);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = attributes().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Number> attributes = attributes();
+        AttributeList list = new AttributeList();
+        for (String attribute : names) {
+            if (attributes.containsKey(attribute)) {
+                list.add(new Attribute(attribute, attributes.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(action), "Metrics have no operations: " + action);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        for (Map.Entry<String, Number> attribute : attributes().entrySet()) {
+            infos.add(new MBeanAttributeInfo(attribute.getKey(), attribute.getValue().getClass().getName(),
+                    attribute.getKey(), true, false, false));
+        }
+        return new MBeanInfo(Metrics.class.getName(), "MiniWatson metrics for " + name,
+                infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
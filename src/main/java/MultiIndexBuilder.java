@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Builds several index variants in a single pass over the wiki files.
+ *
+ * Each wiki file is read and parsed once, and its articles are handed to
+ * one IndexBuilder per variant. Every variant writes on its own thread, so
+ * the variants are analyzed and written in parallel while the next files
+ * are parsed. Within a variant, files are written in name order, so its
+ * docIDs are the same as when it is built alone.
+ *
+ * Each variant stays incremental: a file is only handed to the variants
+ * whose index does not already hold it unchanged, and skipped entirely if
+ * none need it.
+ *
+ * The following methods are defined:
+ *  - getBuilders - the builder of each variant, to configure them.
+ *  - setMetricsPath - where to write the metrics of every variant.
+ *  - indexWiki - indexes the wiki files into every variant.
+ */
+public class MultiIndexBuilder {
+    private static final String WIKI_DIRECTORY_PATH = "src/main/resources/wiki-data";
+    // parsed files waiting for the slowest variant, per variant
+    private static final int FILES_IN_FLIGHT = 2;
+
+    private final List<IndexBuilder> builders = new ArrayList<>();
+    private final String wikiDirectoryPath;
+    private String metricsPath;
+
+    /**
+     * Constructs a builder for the given index types, each written to its
+     * default directory.
+     *
+     * @param indexTypes - String Array, the index types to build.
+     * @throws IOException
+     */
+    public MultiIndexBuilder(String[] indexTypes) throws IOException {
+        this(indexTypes, WIKI_DIRECTORY_PATH);
+    }
+
+    /**
+     * Constructs a builder for the given index types from a given set of
+     * wiki files.
+     *
+     * @param indexTypes - String Array, the index types to build.
+     * @param wikiPath - String, the directory of wiki files to index.
+     * @throws IOException
+     */
+    public MultiIndexBuilder(String[] indexTypes, String wikiPath) throws IOException {
+        wikiDirectoryPath = wikiPath;
+        for (String indexType : indexTypes) {
+            builders.add(new IndexBuilder(indexType, null, wikiPath));
+        }
+    }
+
+    public List<IndexBuilder> getBuilders() {
+        return builders;
+    }
+
+    /**
+     * Sets a file the metrics of every variant are written to, as a JSON
+     * array, once indexing ends.
+     *
+     * @param metricsPath - String, the path of the JSON file.
+     */
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Parses every wiki file once and writes its articles to each variant
+     * that needs it.
+     *
+     * If indexing fails, every variant opened so far is rolled back to its
+     * last commit once its writer thread has stopped, and its metrics are
+     * removed from JMX, as IndexBuilder.indexWiki does for one variant.
+     *
+     * @throws IOException
+     */
+    public void indexWiki() throws IOException {
+        File[] wikiFiles = new File(wikiDirectoryPath).listFiles();
+        Arrays.sort(wikiFiles);
+        long start = System.nanoTime();
+
+        int[] removedFiles = new int[builders.size()];
+        List<IndexBuilder> open = new ArrayList<>();
+        List<ExecutorService> writers = new ArrayList<>();
+        try {
+            for (int i = 0; i < builders.size(); i++) {
+                IndexBuilder builder = builders.get(i);
+                open.add(builder);
+                builder.openWriter();
+                removedFiles[i] = builder.removeDeletedFiles(wikiFiles);
+                writers.add(Executors.newSingleThreadExecutor());
+            }
+            writeFiles(wikiFiles, writers);
+            for (IndexBuilder builder : builders) {
+                builder.closeWriter();
+                open.remove(builder);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            for (IndexBuilder builder : open) {
+                builder.rollbackWriter(e);
+            }
+            throw e;
+        }
+        finally {
+            // stops the writers of a run that failed before writing
+            awaitWriters(writers);
+            for (IndexBuilder builder : builders) {
+                builder.getMetrics().unregister();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (int i = 0; i < builders.size(); i++) {
+            IndexBuilder builder = builders.get(i);
+            System.out.println("== " + builder.getMetrics().getName());
+            builder.report(seconds, removedFiles[i]);
+        }
+        if (metricsPath != null) {
+            StringBuilder json = new StringBuilder("[");
+            for (IndexBuilder builder : builders) {
+                json.append(json.length() > 1 ? ",\n" : "").append(builder.getMetrics().toJson());
+            }
+            Files.write(Paths.get(metricsPath), json.append("]\n").toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Metrics written to " + metricsPath);
+        }
+    }
+
+    /**
+     * Hands every wiki file that some variant needs to the writer thread of
+     * each such variant, and waits for all of them to be written and for
+     * the threads to stop. Once a write fails, no further files are parsed
+     * or written.
+     *
+     * @param wikiFiles - File Array, the wiki files, in name order.
+     * @param writers - List, the writer thread of each variant.
+     * @throws IOException
+     */
+    private void writeFiles(File[] wikiFiles, List<ExecutorService> writers) throws IOException {
+        Semaphore inFlight = new Semaphore(FILES_IN_FLIGHT * builders.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (File f : wikiFiles) {
+                List<Integer> variants = variantsNeeding(f);
+                if (variants.isEmpty()) {
+                    continue;
+                }
+                inFlight.acquire();
+                if (failure.get() != null) {
+                    break;
+                }
+                System.out.println("*****Indexing document: " + f.getName() + "*****");
+                Checksum checksum = new CRC32C();
+                List<WikiArticle> articles = builders.get(variants.get(0)).parseWikiFile(f, checksum);
+                AtomicInteger remaining = new AtomicInteger(variants.size());
+                for (int variant : variants) {
+                    IndexBuilder builder = builders.get(variant);
+                    tasks.add(writers.get(variant).submit(() -> {
+                        try {
+                            if (failure.get() == null) {
+                                builder.writeFile(f.getName(), articles, checksum.getValue());
+                            }
+                        }
+                        catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                        finally {
+                            if (remaining.decrementAndGet() == 0) {
+                                inFlight.release();
+                            }
+                        }
+                    }));
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+        catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+        finally {
+            // the writers must be idle before a failed run is rolled back
+            awaitWriters(writers);
+        }
+        if (failure.get() != null) {
+            throw new IOException("Failed to index wiki files", failure.get());
+        }
+    }
+
+    /**
+     * Waits for the writer thread of every variant to finish the file it is
+     * writing. The threads are not interrupted, since Lucene does not
+     * support interrupting a thread that is writing to an index; files
+     * still queued are skipped once a write has failed.
+     *
+     * @param writers - List, the writer thread of each variant.
+     */
+    private static void awaitWriters(List<ExecutorService> writers) {
+        boolean interrupted = Thread.interrupted();
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+            while (!writer.isTerminated()) {
+                try {
+                    writer.awaitTermination(1, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds the variants whose index does not hold a wiki file unchanged.
+     * The file is only checksummed if some variant has indexed it before.
+     *
+     * @param wikiFile - File, the wiki file.
+     * @return List - the positions of the variants that need the file.
+     * @throws IOException
+     */
+    private List<Integer> variantsNeeding(File wikiFile) throws IOException {
+        String fileName = wikiFile.getName();
+        Long checksum = null;
+        List<Integer> variants = new ArrayList<>();
+        for (int i = 0; i < builders.size(); i++) {
+            IndexBuilder builder = builders.get(i);
+            if (builder.hasIndexed(fileName)) {
+                if (checksum == null) {
+                    checksum = IndexManifest.checksum(wikiFile);
+                }
+                if (builder.isUnchanged(fileName, checksum)) {
+                    continue;
+                }
+            }
+            variants.add(i);
+        }
+        return variants;
+    }
+}
@@ -1,55 +1,79 @@
-import opennlp.tools.lemmatizer.DictionaryLemmatizer;
-import opennlp.tools.postag.POSModel;
-import opennlp.tools.postag.POSTaggerME;
 import java.io.IOException;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
-import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Scanner;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 public class QueryEngine {
     // File path for text file containing jeopardy questions
     private static final String ANSWERS = "src/main/resources/questions.txt";
+    // number of unique titles returned per question
+    private static final int HITS_PER_PAGE = 10;
+    private static final Similarity FIRST_PASS_SIMILARITY = similarityFor("bm25");
     private Analyzer analyzer;
     private String directoryPath;
-    private Directory index;
-    private Hashtable<Integer, Integer> hitsAtPositions;
+    private List<Directory> indexes = new ArrayList<>();
     private boolean lemmatize = false;
     private boolean positional = false;
-    private InputStream posModelIn;
-    private POSModel posModel;
-    private POSTaggerME posTagger;
-    private InputStream dictLemmatizer;
-    private DictionaryLemmatizer lemmatizer;
-    private Scanner input;
-    private IndexReader reader;
-    private IndexSearcher searcher;
+    private TextLemmatizer lemmatizer;
+    private List<SearcherManager> searcherManagers = new ArrayList<>();
+    private Similarity similarity;
+    private ExecutorService searchPool;
+    private int threads = 1;
+    private volatile ClueQueryBuilder queryBuilder;
+    private boolean shingleLookups = false;
+    private String compiledQuestionsPath;
+    private Metrics metrics;
+    private String metricsPath;
+    private String directoryMode = "auto";
+    private boolean warm = false;
+    private boolean shingles = true;
+    private String searchType;
+    private String scoringMethod;
+    private QueryResultCache resultCache;
+    private String cachePath;
+    private int rescoreDepth = 0;
 
     public QueryEngine(String searchType, String scoringMethod) throws IOException, ParseException {
+        this(searchType, scoringMethod, null);
+    }
+
+    /**
+     * Constructs a query engine over the index in a given directory, such
+     * as one built from a generated corpus.
+     *
+     * @param searchType - String, the type of index to search.
+     * @param scoringMethod - String, the scoring method: bm25, tfidf or default.
+     * @param indexPath - String, the directory of the index, or null for
+     *                  the default directory of the index type.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public QueryEngine(String searchType, String scoringMethod, String indexPath)
+            throws IOException, ParseException {
         directoryPath = "src/main/resources/";
         if (searchType.equals("lemma")) {
             directoryPath = directoryPath + "lemmatized-indexed-documents";
             analyzer = new StandardAnalyzer();
             lemmatize = true;
-            posModelIn = new FileInputStream("src/main/resources/dictionary/en-pos-maxent.bin");
-            dictLemmatizer = new FileInputStream("src/main/resources/dictionary/en-lemmatizer.dict");
-            posModel = new POSModel(posModelIn);
-            posTagger = new POSTaggerME(posModel);
-            lemmatizer = new DictionaryLemmatizer(dictLemmatizer);
         }
         else if (searchType.equals("standard")) {
             directoryPath = directoryPath + "standard-indexed-documents";
@@ -73,187 +97,800 @@ public class QueryEngine {
             System.err.println("Error! Must specify type of search desired");
             throw new RuntimeException();
         }
-        index = null;
-        hitsAtPositions = new Hashtable<>();
-        try {
-            index = FSDirectory.open(new File(directoryPath).toPath());
+        if (indexPath != null) {
+            directoryPath = indexPath;
         }
-        catch(IOException e) {
-            throw new RuntimeException(e);
+        this.searchType = searchType;
+        this.scoringMethod = scoringMethod;
+        similarity = similarityFor(scoringMethod);
+        metrics = new Metrics("query-" + searchType);
+        if (lemmatize) {
+            metrics.gauge("lemma.cacheHits", () -> lemmatizer == null ? 0 : lemmatizer.getCache().getHits());
+            metrics.gauge("lemma.cacheMisses", () -> lemmatizer == null ? 0 : lemmatizer.getCache().getMisses());
         }
-        input = null;
-        reader = DirectoryReader.open(index);
-        searcher = new IndexSearcher(reader);
+        metrics.gauge("query.storedFieldLoads", this::storedFieldLoads);
+        metrics.gauge("cache.hits", () -> resultCache == null ? 0 : resultCache.getHits());
+        metrics.gauge("cache.misses", () -> resultCache == null ? 0 : resultCache.getMisses());
+        metrics.register();
+    }
+
+    /**
+     * Returns the Similarity for a scoring method: bm25, tfidf, or
+     * anything else for Lucene's default.
+     *
+     * @param scoringMethod - String, the name of the scoring method.
+     * @return Similarity - the similarity to score with.
+     */
+    public static Similarity similarityFor(String scoringMethod) {
         if (scoringMethod.equals("bm25")) {
-            searcher.setSimilarity((new BM25Similarity((float)1.4, (float)0.15)));
+            return new BM25Similarity((float)1.4, (float)0.15);
         }
         else if (scoringMethod.equals("tfidf")) {
-            searcher.setSimilarity(new TFIDFSimilarity());
+            return new TFIDFSimilarity();
         }
-        try {
-            input = new Scanner(new File(ANSWERS));
-        }
-        catch(Exception e) {}
-    }
-
-    public void performQueries() throws IOException, ParseException {
-        int j = 1;
-        int matches = 0;
-        int hitsAtOne = 0;
-        // Loop through every clue and answer in file and print the hits where answer is in top 10 docs
-        while (input.hasNextLine()) {
-            String category = input.nextLine();
-            String clue = input.nextLine();
-            String answer = input.nextLine();
-            input.nextLine();
-            String queryString = clue.replaceAll("\\p{Cntrl}", "") +
-                    " " + category.replaceAll("\\p{Cntrl}", "");
-            String queryStringNoCat = clue.replaceAll("\\p{Cntrl}", "");
-
-            if (lemmatize) {
-                queryString = lemmatizeString(queryString);
-            }
-	            
-	        // category query
-	        QueryParser catQP = new QueryParser("categories", analyzer);
-	        Query catQuery = catQP.parse(QueryParser.escape(category));
-            
-            // if clue contains at least one quote, do phrase searches on quotes
-            TopDocs docs;
-            if (queryStringNoCat.contains("\"") && positional == true) {
-                // some of the categories have quotation marks in them, so just splitting on clue
-                String[] splitQueryString = queryStringNoCat.split("\"");
-                QueryParser queryParser = new QueryParser("body", analyzer);
-
-                // breaking on quotes will cause content within quotes to be in every odd index
-                ArrayList<Query> phraseQueries = new ArrayList<Query>();
-                for (int i = 1; i < splitQueryString.length; i += 2) {
-                    String tempString = QueryParser.escape(splitQueryString[i]);
-                    tempString = "\""+tempString+"\"2.5";
-                    phraseQueries.add(queryParser.parse(tempString));
+        return IndexSearcher.getDefaultSimilarity();
+    }
+
+    /**
+     * Creates the factory the SearcherManager uses whenever it opens a
+     * reader, giving each searcher its titles, similarity and executor.
+     * The shards of a sharded index are searched in parallel instead, so
+     * their searchers get no executor.
+     *
+     * @param sharded - boolean, whether the index has several shards.
+     * @return SearcherFactory - the factory.
+     */
+    private SearcherFactory newSearcherFactory(boolean sharded) {
+        ExecutorService executor = sharded ? null : searchPool;
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+                if (warm) {
+                    long start = System.nanoTime();
+                    long postings = IndexDirectories.warm(reader);
+                    System.out.printf("Warmed %d postings in %.1f ms\n", postings, (System.nanoTime() - start) / 1e6);
                 }
+                TitleSearcher searcher = new TitleSearcher(reader, executor);
+                searcher.setSimilarity(similarity);
+                return searcher;
+            }
+        };
+    }
+
+    /**
+     * Opens the index for searching, with the options set so far. Options
+     * that change how the index is opened, such as the directory mode,
+     * must be set before; the engine searches nothing until it is open.
+     *
+     * @throws IOException
+     */
+    public void open() throws IOException {
+        if (isOpen()) {
+            throw new IllegalStateException("The " + searchType + " index is already open");
+        }
+        openIndex();
+        loadResultCache();
+    }
 
-                // build a Boolean query with all the quotes as phrase queries and the entire question
-                // as a normal query
-                BooleanQuery.Builder boolBuilder = new BooleanQuery.Builder();
-                for (int i = 0; i < phraseQueries.size(); i++) {
-                    boolBuilder.add(phraseQueries.get(i), BooleanClause.Occur.SHOULD);
+    private boolean isOpen() {
+        return !searcherManagers.isEmpty();
+    }
+
+    private void checkOpen() {
+        if (!isOpen()) {
+            throw new IllegalStateException("The " + searchType + " index must be opened before searching");
+        }
+    }
+
+    private void checkNotOpen(String option) {
+        if (isOpen()) {
+            throw new IllegalStateException("Set " + option + " before opening the " + searchType + " index");
+        }
+    }
+
+    /**
+     * Opens every shard of the index in the current directory mode,
+     * closing the readers and directories opened before, if any.
+     *
+     * @throws IOException
+     */
+    private void openIndex() throws IOException {
+        closeIndex();
+        List<Path> shards = IndexDirectories.shardPaths(new File(directoryPath).toPath());
+        if (shards.isEmpty()) {
+            shards = Collections.singletonList(new File(directoryPath).toPath());
+        }
+        for (Path shard : shards) {
+            Directory index = IndexDirectories.open(shard, directoryMode);
+            indexes.add(index);
+            searcherManagers.add(new SearcherManager(index, newSearcherFactory(shards.size() > 1)));
+        }
+        shingleLookups = positional && shingles && hasShingles();
+        queryBuilder = null;
+    }
+
+    /**
+     * Returns the query builder for the open index, loading the analysis
+     * models on first use, so that runs over a compiled question set never
+     * load them.
+     *
+     * @return ClueQueryBuilder - the query builder.
+     * @throws IOException
+     */
+    private ClueQueryBuilder queryBuilder() throws IOException {
+        ClueQueryBuilder builder = queryBuilder;
+        if (builder == null) {
+            checkOpen();
+            synchronized (this) {
+                if (queryBuilder == null) {
+                    if (lemmatize && lemmatizer == null) {
+                        lemmatizer = new TextLemmatizer();
+                    }
+                    queryBuilder = new ClueQueryBuilder(FieldSchema.analyzer(analyzer), lemmatizer, positional,
+                            shingleLookups);
                 }
+                builder = queryBuilder;
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Loads the models needed to analyze questions now rather than on the
+     * first search, to fail early if they are missing. The index must be
+     * open, as the queries built depend on its fields.
+     *
+     * @throws IOException
+     */
+    public void loadModels() throws IOException {
+        queryBuilder();
+    }
+
+    /**
+     * Determines if the index has the shingle field, i.e. was built with
+     * shingles=true.
+     *
+     * @return boolean - true if short phrases can be looked up as shingles.
+     * @throws IOException
+     */
+    private boolean hasShingles() throws IOException {
+        IndexSearcher searcher = searcherManagers.get(0).acquire();
+        try {
+            return MultiFields.getMergedFieldInfos(searcher.getIndexReader()).fieldInfo(FieldSchema.SHINGLES) != null;
+        }
+        finally {
+            searcherManagers.get(0).release(searcher);
+        }
+    }
+
+    private void closeIndex() throws IOException {
+        for (SearcherManager searcherManager : searcherManagers) {
+            searcherManager.close();
+        }
+        for (Directory index : indexes) {
+            index.close();
+        }
+        searcherManagers.clear();
+        indexes.clear();
+    }
+
+    /**
+     * Sets the number of questions evaluated at once. A value of 1
+     * evaluates the questions one after another on the calling thread.
+     *
+     * @param threads - int, the size of the question worker pool.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of threads a single search may use to score slices
+     * of segments, or the shards of a sharded index, in parallel. A value
+     * of 1 searches every segment on the thread running the question.
+     * Must be set before the index is opened.
+     *
+     * @param searchThreads - int, the size of the IndexSearcher executor.
+     */
+    public void setSearchThreads(int searchThreads) {
+        checkNotOpen("searchThreads");
+        if (searchThreads < 1) {
+            throw new IllegalArgumentException("Search thread count must be at least 1, got " + searchThreads);
+        }
+        if (searchPool != null) {
+            searchPool.shutdown();
+            searchPool = null;
+        }
+        if (searchThreads > 1) {
+            searchPool = Executors.newFixedThreadPool(searchThreads);
+        }
+    }
+
+    /**
+     * Sets how the index is opened for searching; see IndexDirectories.
+     * The heap and offheap modes copy the index once and so are not
+     * updated by refresh. Must be set before the index is opened.
+     *
+     * @param directoryMode - String, one of auto, mmap, nio, heap or offheap.
+     */
+    public void setDirectoryMode(String directoryMode) {
+        checkNotOpen("the directory mode");
+        this.directoryMode = directoryMode;
+    }
+
+    /**
+     * Sets whether every newly opened reader has the postings and norms of
+     * the searched fields read once before it serves any query. Must be
+     * set before the index is opened.
+     *
+     * @param warm - boolean, whether to warm new readers.
+     */
+    public void setWarm(boolean warm) {
+        checkNotOpen("warm");
+        this.warm = warm;
+    }
+
+    /**
+     * Sets whether quoted phrases are looked up in the shingle field, when
+     * the index has one, rather than run as phrase queries. Must be set
+     * before the index is opened.
+     *
+     * @param shingles - boolean, whether to use the shingle field.
+     */
+    public void setShingles(boolean shingles) {
+        checkNotOpen("shingles");
+        this.shingles = shingles;
+    }
+
+    /**
+     * Sets a file holding the questions compiled for this type of index,
+     * so that performQueries builds its queries without analyzing them.
+     * The file is written on the first run and whenever the questions file
+     * changes.
+     *
+     * @param compiledQuestionsPath - String, the path of the compiled file.
+     */
+    public void setCompiledQuestionsPath(String compiledQuestionsPath) {
+        this.compiledQuestionsPath = compiledQuestionsPath;
+    }
+
+    /**
+     * Searches in two stages: a first pass over the whole index with only
+     * the term queries of the clue and category, scored with BM25, and a
+     * second pass that rescores its top unique titles with the complete
+     * query, phrases included. Questions without phrases are searched in
+     * one pass as before. A title is rescored through the document that
+     * scored best in the first pass, so titles below the first can differ
+     * from a one-pass search even when every title is rescored.
+     *
+     * @param rescoreDepth - int, the number of first-pass titles to
+     *                     rescore, or 0 to search in one pass.
+     */
+    public void setRescoreDepth(int rescoreDepth) {
+        if (rescoreDepth < 0) {
+            System.err.println("Error! Rescore depth must not be negative: " + rescoreDepth);
+            throw new RuntimeException();
+        }
+        this.rescoreDepth = rescoreDepth;
+    }
+
+    /**
+     * Caches the top hits of up to a given number of queries, so that a
+     * repeated clue is answered without searching. Off by default, so
+     * that latencies measure the search itself.
+     *
+     * @param cacheSize - int, the number of queries to cache, or 0 to
+     *                  turn the cache off.
+     * @param ttlSeconds - long, how long cached hits stay valid, or 0 until
+     *                   the index changes.
+     * @throws IOException
+     */
+    public void setResultCache(int cacheSize, long ttlSeconds) throws IOException {
+        resultCache = cacheSize > 0 ? new QueryResultCache(cacheSize, ttlSeconds) : null;
+        loadResultCache();
+    }
+
+    /**
+     * Sets a file the result cache is loaded from, once the index is open,
+     * and saved to on close, so that later runs over the same index start
+     * warm.
+     *
+     * @param cachePath - String, the path of the cache file.
+     * @throws IOException
+     */
+    public void setCachePath(String cachePath) throws IOException {
+        this.cachePath = cachePath;
+        loadResultCache();
+    }
+
+    private void loadResultCache() throws IOException {
+        if (resultCache == null || !isOpen()) {
+            return;
+        }
+        updateCacheGeneration();
+        if (cachePath == null) {
+            return;
+        }
+        int loaded = resultCache.load(new File(cachePath).toPath());
+        System.out.println("Loaded " + loaded + " cached queries from " + cachePath);
+    }
+
+    /**
+     * Tells the result cache which commit of the index is now searched.
+     *
+     * @throws IOException
+     */
+    private void updateCacheGeneration() throws IOException {
+        ShardedSearcher searcher = ShardedSearcher.acquire(searcherManagers, searchPool);
+        try {
+            resultCache.setGeneration(cacheGeneration(searcher));
+        }
+        finally {
+            searcher.release(searcherManagers);
+        }
+    }
+
+    /**
+     * Identifies the index a searcher reads, down to the commit of each
+     * shard, so that cached hits are dropped once it changes.
+     */
+    private String cacheGeneration(ShardedSearcher searcher) {
+        return new File(directoryPath).getAbsolutePath() + ':' + searcher.getGeneration();
+    }
+
+    /**
+     * Sets a file the metrics are written to as JSON after performQueries.
+     *
+     * @param metricsPath - String, the path of the JSON file.
+     */
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Returns the timers and counters of each query stage: build (analysis
+     * and query construction), search (scoring and collecting), titles
+     * (looking up the titles of the hits) and total.
+     *
+     * @return Metrics - the query metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
 
-                // building the complete query (all phrase queries + full question query + category query)
-                queryString = QueryParser.escape(queryString);
-                Query fullQuery = queryParser.parse(queryString);
-                boolBuilder.add(fullQuery, Occur.SHOULD);
-                boolBuilder.add(catQuery, Occur.SHOULD);
-                BooleanQuery completeQuery = boolBuilder.build();
-
-                int hitsPerPage = 20;
-                docs = searcher.search(completeQuery, hitsPerPage);
-
-                // normal query
-            } else {
-                QueryParser queryParser = new QueryParser("body", analyzer);
-                queryString = QueryParser.escape(queryString);
-                Query bodyQuery = queryParser.parse(queryString);
-                int hitsPerPage = 20;
-                BooleanQuery completeQuery = new BooleanQuery.Builder()	// combines body and category queries
-            		    .add(catQuery, BooleanClause.Occur.SHOULD)
-            		    .add(bodyQuery, BooleanClause.Occur.SHOULD)
-            		    .build();
-                docs = searcher.search(completeQuery, hitsPerPage);
+    /**
+     * Returns the number of titles the current reader has loaded from
+     * stored fields rather than doc values.
+     *
+     * @return long - the number of stored-field title loads.
+     */
+    private long storedFieldLoads() {
+        if (!isOpen()) {
+            return 0;
+        }
+        try {
+            ShardedSearcher searcher = ShardedSearcher.acquire(searcherManagers, searchPool);
+            try {
+                return searcher.getStoredFieldLoads();
+            }
+            finally {
+                searcher.release(searcherManagers);
             }
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
 
-            ScoreDoc[] hits = filterDuplicates(docs.scoreDocs);
-            boolean matchFound = false;
-            System.out.println("Question " + j + ": " + answer.toLowerCase());
-            for(int i = 0; i < hits.length; ++i) {
-                int docId = hits[i].doc;
-                Document d = searcher.doc(docId);
-                if ((d.get("title").replaceAll("\\[|\\]", "").toLowerCase().matches(answer.toLowerCase())) && !matchFound) {
-                    System.out.println("Document hit for " + answer + " at position: " + (i + 1));
-                    matches++;
-                    int temp = hitsAtPositions.getOrDefault(i + 1, 0);
-                    temp++;
-                    hitsAtPositions.put(i + 1, temp);
-                    hitsAtOne = i == 0 ? hitsAtOne + 1 : hitsAtOne;
-                    matchFound = true;
-                }
+    /**
+     * Reopens the index reader if the index has changed since it was
+     * last opened. Searches already running keep their old reader, and
+     * do not cache their hits once it is replaced.
+     *
+     * @throws IOException
+     */
+    public void refresh() throws IOException {
+        for (SearcherManager searcherManager : searcherManagers) {
+            searcherManager.maybeRefresh();
+        }
+        if (resultCache != null) {
+            updateCacheGeneration();
+        }
+    }
+
+    /**
+     * Searches for a single question and returns the top unique titles.
+     * 
+     * @param category - String, the category of the question.
+     * @param clue - String, the clue of the question.
+     * @param scoring - Similarity, the similarity to score with, or null
+     *                for the engine's own.
+     * @param numHits - int, the number of unique titles to return.
+     * @return List - the hits, best first.
+     * @throws IOException
+     */
+    public List<SearchHit> search(String category, String clue, Similarity scoring, int numHits)
+            throws IOException {
+        long start = System.nanoTime();
+        ClueQuery query = queryBuilder().build(category, clue);
+        metrics.record("query.build", System.nanoTime() - start);
+        ShardedSearcher searcher = ShardedSearcher.acquire(searcherManagers, searchPool);
+        try {
+            if (scoring != null && scoring != similarity) {
+                return search(searcher.withSimilarity(scoring), query, numHits);
             }
-            j++;
+            return search(searcher, query, numHits);
+        }
+        finally {
+            searcher.release(searcherManagers);
+            metrics.record("query.total", System.nanoTime() - start);
+            metrics.increment("query.questions");
         }
-        printStats(matches, hitsAtOne);
     }
-    
+
     /**
+     * Runs a query, keeping only the best scoring document for each title.
      * 
+     * @param searcher - ShardedSearcher, the searcher to run the query on.
+     * @param query - ClueQuery, the query to run.
+     * @param numHits - int, the number of unique titles to return.
+     * @return List - the hits, best first.
+     * @throws IOException
+     */
+    private List<SearchHit> search(ShardedSearcher searcher, ClueQuery query, int numHits) throws IOException {
+        String cacheKey = null;
+        String generation = null;
+        if (resultCache != null) {
+            generation = cacheGeneration(searcher);
+            String scoring = searcher.getSimilarity().toString();
+            if (rescoreDepth > 0) {
+                scoring += ", rescoring " + rescoreDepth;
+            }
+            cacheKey = QueryResultCache.key(searchType, scoring, query.toString(), numHits);
+            List<SearchHit> cached = resultCache.get(cacheKey, generation);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long start = System.nanoTime();
+        ScoreDoc[] hits;
+        if (rescoreDepth == 0 || !query.hasPhrases()) {
+            hits = searcher.search(query.getComplete(), numHits);
+        }
+        else if (searcher.getSimilarity() instanceof BM25Similarity) {
+            // the first pass already scored everything but the phrases
+            ScoreDoc[] candidates = searcher.search(query.getTerms(), Math.max(rescoreDepth, numHits));
+            long rescoreStart = System.nanoTime();
+            hits = searcher.rescore(query.getPhrases(), candidates, numHits, true);
+            metrics.record("query.rescore", System.nanoTime() - rescoreStart);
+        }
+        else {
+            ScoreDoc[] candidates = searcher.withSimilarity(FIRST_PASS_SIMILARITY).search(query.getTerms(),
+                    Math.max(rescoreDepth, numHits));
+            long rescoreStart = System.nanoTime();
+            hits = searcher.rescore(query.getComplete(), candidates, numHits, false);
+            metrics.record("query.rescore", System.nanoTime() - rescoreStart);
+        }
+        long titleStart = System.nanoTime();
+        metrics.record("query.search", titleStart - start);
+
+        List<SearchHit> results = new ArrayList<>(hits.length);
+        for (ScoreDoc hit : hits) {
+            results.add(searcher.toSearchHit(hit));
+        }
+        metrics.record("query.titles", System.nanoTime() - titleStart);
+        metrics.add("query.hits", hits.length);
+        if (resultCache != null) {
+            resultCache.put(cacheKey, generation, results);
+        }
+        return results;
+    }
+
+    /**
+     * Runs every question in the questions file and prints where the
+     * answer appeared in the top 10 documents, followed by the stats.
      * 
-     * @param results
-     * @return
-     */
-    // returns a list of the top 10 unique documents from the 20 given results
-    private ScoreDoc[] filterDuplicates(ScoreDoc[] results) {
-    	ScoreDoc[] filtered = new ScoreDoc[10];
-    	HashSet<String> usedTitles = new HashSet<String>();	// keeps track of unique titles
-    	int j = 0;
-    	for (int i = 0; i < filtered.length; i++) {
-    		String title;
-			try {
-				title = searcher.doc(results[j].doc).get("title");
-				if (!usedTitles.contains(title)) {	// if title is unique, add it to filtered list
-	    			usedTitles.add(title);
-	    			filtered[i] = results[j];
-	    			j++;
-	    		} else {		// if title has already been added, skip the document
-	    			i--; j++;
-	    		}
-				
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-    	}
-    	return filtered;
-    }
-
-    /**
-     * Lemmatizes a given word using the OpenNLP library
+     * Questions may be evaluated concurrently, but results are printed in
+     * question order, so the output is the same for any thread count.
      * 
-     * @param str - String, the word to lemmatize.
-     * @return ret - String, the string once lemmatized.
-     */
-    private String lemmatizeString(String str) {
-        String[] tokens = str.split("[\\s@&.?$+-/=]+");
-        String tags[] = posTagger.tag(tokens);
-        String[] lemmas = lemmatizer.lemmatize(tokens, tags);
-        String ret = "";
-        for (int i = 0; i < lemmas.length; i++) {
-            if (lemmas[i].equals("O")) {
-                ret = ret + tokens[i];
+     * @throws IOException
+     */
+    public void performQueries() throws IOException {
+        checkOpen();
+        CompiledQuestionSet compiled = compiledQuestionsPath == null ? null : openCompiledQuestions();
+        List<Question> questions = compiled == null ? Question.readAll(ANSWERS) : compiled.getQuestions();
+        EvaluationResult result = new EvaluationResult(searchType, scoringMethod, questions.size(), HITS_PER_PAGE);
+
+        // every question is searched against the same point-in-time reader
+        ShardedSearcher searcher = ShardedSearcher.acquire(searcherManagers, searchPool);
+        long start = System.nanoTime();
+        long elapsed;
+        try {
+            if (threads > 1) {
+                evaluateConcurrently(searcher, questions, compiled, result);
             }
             else {
-                ret = ret + lemmas[i];
+                for (int i = 0; i < questions.size(); i++) {
+                    evaluate(searcher, questions.get(i), compiled, result, i);
+                }
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        finally {
+            searcher.release(searcherManagers);
+        }
+
+        for (int i = 0; i < questions.size(); i++) {
+            String answer = questions.get(i).getAnswer();
+            System.out.println("Question " + (i + 1) + ": " + answer.toLowerCase());
+            if (result.getPosition(i) > 0) {
+                System.out.println("Document hit for " + answer + " at position: " + result.getPosition(i));
+            }
+        }
+        printStats(result, elapsed, searcher);
+        if (metricsPath != null) {
+            metrics.writeJson(new File(metricsPath).toPath());
+        }
+    }
+
+    /**
+     * Maps the question set compiled for this type of index, compiling it
+     * first if it is missing or the questions file has changed since.
+     *
+     * @return CompiledQuestionSet - the compiled questions.
+     * @throws IOException
+     */
+    private CompiledQuestionSet openCompiledQuestions() throws IOException {
+        Path file = new File(compiledQuestionsPath).toPath();
+        long checksum = IndexManifest.checksum(new File(ANSWERS));
+        CompiledQuestionSet compiled = CompiledQuestionSet.open(file, searchType, checksum);
+        if (compiled == null) {
+            System.out.println("Compiling the questions for the " + searchType + " index to " + file);
+            CompiledQuestionSet.compile(Question.readAll(ANSWERS), queryBuilder(), searchType, checksum, file);
+            compiled = CompiledQuestionSet.open(file, searchType, checksum);
+        }
+        return compiled;
+    }
+
+    /**
+     * Evaluates the questions on a fixed pool of worker threads.
+     * 
+     * @param searcher - ShardedSearcher, the searcher to run the questions on.
+     * @param questions - List, the questions to evaluate.
+     * @param compiled - CompiledQuestionSet, the analyzed questions, or null
+     *                 to analyze each question.
+     * @param result - EvaluationResult, receives the outcome of each question.
+     * @throws IOException
+     */
+    private void evaluateConcurrently(ShardedSearcher searcher, List<Question> questions,
+            CompiledQuestionSet compiled, EvaluationResult result) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> {
+                evaluate(searcher, questions.get(index), compiled, result, index);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
             }
-            if (i != lemmas.length - 1) {
-                ret = ret + " ";
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching", e);
+        }
+        catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new IOException("Failed to evaluate questions", e.getCause());
+        }
+    }
+
+    /**
+     * Searches for a single question and records where its answer appeared.
+     * 
+     * @param searcher - ShardedSearcher, the searcher to run the question on.
+     * @param question - Question, the question to search for.
+     * @param compiled - CompiledQuestionSet, the analyzed questions, or null
+     *                 to analyze the question.
+     * @param result - EvaluationResult, receives the position of the answer
+     *               in the top 10 documents and the latency of the question.
+     * @param index - int, the position of the question in the question set.
+     * @throws IOException
+     */
+    private void evaluate(ShardedSearcher searcher, Question question, CompiledQuestionSet compiled,
+            EvaluationResult result, int index) throws IOException {
+        long queryStart = System.nanoTime();
+        ClueQuery query = compiled == null ? queryBuilder().build(question.getCategory(), question.getClue())
+                : ClueQueryBuilder.toQuery(compiled.getClue(index), shingleLookups);
+        metrics.record("query.build", System.nanoTime() - queryStart);
+
+        List<SearchHit> hits = search(searcher, query, HITS_PER_PAGE);
+        long latency = System.nanoTime() - queryStart;
+        metrics.record("query.total", latency);
+        metrics.increment("query.questions");
+        result.record(index, question.getAnswerMatcher().position(hits), latency);
+    }
+
+    /**
+     * Evaluates the questions with each of several scoring methods, on a
+     * fork-join pool. Every scoring method searches the same point-in-time
+     * readers, and each question's query is built once and run under every
+     * method. Latency is the search time alone, as query construction is
+     * shared.
+     *
+     * Does not print anything or touch the stats of performQueries.
+     *
+     * @param questions - List, the questions to evaluate.
+     * @param scoringMethods - List, the scoring methods: bm25, tfidf or default.
+     * @param pool - ForkJoinPool, the pool to evaluate on. When called from a
+     *             task in a pool, the questions are forked in that pool.
+     * @return List - the result of each scoring method, in the order given.
+     * @throws IOException
+     */
+    public List<EvaluationResult> evaluate(List<Question> questions, List<String> scoringMethods,
+            ForkJoinPool pool) throws IOException {
+        checkOpen();
+        List<EvaluationResult> results = new ArrayList<>(scoringMethods.size());
+        ShardedSearcher searcher = ShardedSearcher.acquire(searcherManagers, searchPool);
+        try {
+            ShardedSearcher[] searchers = new ShardedSearcher[scoringMethods.size()];
+            for (int i = 0; i < searchers.length; i++) {
+                searchers[i] = searcher.withSimilarity(similarityFor(scoringMethods.get(i)));
+                results.add(new EvaluationResult(searchType, scoringMethods.get(i), questions.size(),
+                        HITS_PER_PAGE));
+            }
+            // load the models up front rather than in the first task to need them
+            queryBuilder();
+            EvaluateRange task = new EvaluateRange(questions, searchers, results, 0, questions.size());
+            try {
+                if (ForkJoinTask.inForkJoinPool()) {
+                    task.invoke();
+                }
+                else {
+                    pool.invoke(task);
+                }
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        finally {
+            searcher.release(searcherManagers);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates a range of questions, splitting it in half until it is
+     * small enough to search directly.
+     */
+    private class EvaluateRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 16;
+
+        private final List<Question> questions;
+        private final ShardedSearcher[] searchers;
+        private final List<EvaluationResult> results;
+        private final int from;
+        private final int to;
+
+        EvaluateRange(List<Question> questions, ShardedSearcher[] searchers, List<EvaluationResult> results,
+                int from, int to) {
+            this.questions = questions;
+            this.searchers = searchers;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluateRange(questions, searchers, results, from, middle),
+                        new EvaluateRange(questions, searchers, results, middle, to));
+                return;
+            }
+            try {
+                for (int i = from; i < to; i++) {
+                    Question question = questions.get(i);
+                    ClueQuery query = queryBuilder().build(question.getCategory(), question.getClue());
+                    for (int s = 0; s < searchers.length; s++) {
+                        long start = System.nanoTime();
+                        List<SearchHit> hits = search(searchers[s], query, HITS_PER_PAGE);
+                        results.get(s).record(i, question.getAnswerMatcher().position(hits),
+                                System.nanoTime() - start);
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        return ret;
     }
 
     /**
      * Prints out an analysis of the query results:
      *  - the total hits in the top 10 documents
-     *  - the precision at one (P@1) metric.
+     *  - the precision at one (P@1), MRR, nDCG@10 and recall@k metrics.
+     *  - the question throughput and p50/p99 latency.
      * 
-     * @param matches - the number of matches for a given query.
-     * @param hitsAtOne - the number of hits that appeared at the top 
-     *                  position.
-     */
-    private void printStats(int matches, int hitsAtOne) {
-        System.out.println("Total hits in top 10 docs: " + matches);
-        System.out.printf("P@1: %.2f\n", (hitsAtOne / 100.0));
-        for (int i = 1; i <= 10; i++) {
-            // UNCOMMENT BELOW LINE TO SEE WHAT POSITION RESULT IS IN
-            System.out.println("Docs in position " + i + ": " + hitsAtPositions.getOrDefault(i, 0));
+     * @param result - the outcome of every question.
+     * @param elapsed - the wall time of the whole run, in nanoseconds.
+     * @param searcher - the searcher the questions were searched with.
+     */
+    private void printStats(EvaluationResult result, long elapsed, ShardedSearcher searcher) {
+        System.out.println("Total hits in top " + HITS_PER_PAGE + " docs: " + result.hitsAt(HITS_PER_PAGE));
+        System.out.printf("P@1: %.3f\n", result.precisionAt1());
+        System.out.printf("MRR: %.3f, nDCG@%d: %.3f\n", result.meanReciprocalRank(), HITS_PER_PAGE,
+                result.ndcgAt(HITS_PER_PAGE));
+        System.out.printf("Recall@1: %.3f, @5: %.3f, @%d: %.3f\n", result.recallAt(1), result.recallAt(5),
+                HITS_PER_PAGE, result.recallAt(HITS_PER_PAGE));
+        long[] histogram = result.histogram();
+        for (int i = 1; i <= histogram.length; i++) {
+            System.out.println("Docs in position " + i + ": " + histogram[i - 1]);
+        }
+        if (lemmatizer != null) {
+            System.out.println("Lemma cache: " + lemmatizer.getCache());
+        }
+        if (resultCache != null) {
+            System.out.println("Result cache: " + resultCache);
+        }
+        System.out.printf("Throughput: %.1f questions/sec (%d threads)\n", result.recorded() / (elapsed / 1e9),
+                threads);
+        System.out.printf("Query latency: p50 %.2f ms, p99 %.2f ms\n",
+                result.latencyPercentile(0.50) / 1e6, result.latencyPercentile(0.99) / 1e6);
+        System.out.printf("Average query construction: %.3f ms, search: %.3f ms, title lookup: %.3f ms\n",
+                metrics.getMeanNanos("query.build") / 1e6, metrics.getMeanNanos("query.search") / 1e6,
+                metrics.getMeanNanos("query.titles") / 1e6);
+        if (rescoreDepth > 0) {
+            System.out.printf("Average rescoring of the top %d titles: %.3f ms\n", rescoreDepth,
+                    metrics.getMeanNanos("query.rescore") / 1e6);
+        }
+        System.out.println("Stored-field title loads: " + searcher.getStoredFieldLoads());
+        if (searcher.getShardCount() > 1) {
+            System.out.println("Shards searched: " + searcher.getShardCount());
+        }
+    }
+
+    /**
+     * Returns a percentile of sorted values, by the nearest-rank method.
+     *
+     * @param sorted - long Array, the values in ascending order.
+     * @param p - double, the percentile, between 0 and 1.
+     * @return long - the value at that percentile, or 0 if there are none.
+     */
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Saves the result cache, if it has a file, and releases the search
+     * threads and the index reader.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (resultCache != null && cachePath != null) {
+            resultCache.save(new File(cachePath).toPath());
+        }
+        metrics.unregister();
+        closeIndex();
+        if (searchPool != null) {
+            searchPool.shutdown();
         }
     }
 
@@ -0,0 +1,337 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of the top hits of complete queries.
+ *
+ * Entries are keyed on the query, after analysis, plus the index type,
+ * the Similarity and the number of hits, and are spread over segments
+ * like LemmaCache: access-ordered LinkedHashMaps with a lock each, which
+ * evict their least recently used entry once full. A cache smaller than
+ * SEGMENTS entries has one segment per entry, and the capacity is split
+ * over the segments without rounding. An entry older than the time to
+ * live is dropped when it is next looked up.
+ *
+ * Cached hits are only valid for the index they were searched on, so
+ * every entry records the generation, the commit versions of the index
+ * shards, it was searched at. A lookup only returns hits of the
+ * generation it searches, and hits of any generation but the current
+ * one are not stored, so a search that was still running on the old
+ * commit when the index was refreshed cannot cache its hits for the new
+ * one. Entries of older generations are dropped as they are looked up,
+ * or evicted like any other.
+ *
+ * The cache can be saved to a file and loaded back by a later run over
+ * the same commit; entries of any other commit are not loaded.
+ *
+ * The following methods are defined:
+ *  - get / put - look up and record the hits of a query.
+ *  - setGeneration - moves the cache on to a new commit of the index.
+ *  - load / save - read and write the cache file.
+ *  - getHits / getMisses / hitRatio - the lookup counters.
+ */
+public class QueryResultCache {
+    private static final int SEGMENTS = 16;
+    private static final int FILE_VERSION = 2;
+
+    private final Segment[] segments;
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile String generation = "";
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries - int, the maximum number of queries to hold, at
+     *                   least 1.
+     * @param ttlSeconds - long, how long an entry stays valid, or 0 to
+     *                   keep entries until they are evicted.
+     */
+    public QueryResultCache(int maxEntries, long ttlSeconds) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Query result cache must hold at least 1 entry, got " + maxEntries);
+        }
+        if (ttlSeconds < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative, got " + ttlSeconds);
+        }
+        segments = new Segment[Math.min(SEGMENTS, maxEntries)];
+        for (int i = 0; i < segments.length; i++) {
+            // the first maxEntries % segments.length segments hold one more
+            segments[i] = new Segment(maxEntries / segments.length + (i < maxEntries % segments.length ? 1 : 0));
+        }
+        ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Builds the key of a query.
+     *
+     * @param indexType - String, the type of index searched.
+     * @param similarity - String, the Similarity scored with.
+     * @param query - String, the analyzed query.
+     * @param numHits - int, the number of hits asked for.
+     * @return String - the key.
+     */
+    public static String key(String indexType, String similarity, String query, int numHits) {
+        return indexType + '\u0000' + similarity + '\u0000' + numHits + '\u0000' + query;
+    }
+
+    /**
+     * Moves the cache on to the commit the index is now searched at. Only
+     * hits searched at this generation are stored from now on.
+     *
+     * @param generation - String, the commit versions of the index shards.
+     */
+    public void setGeneration(String generation) {
+        this.generation = generation;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Looks up the hits of a query searched at a given generation.
+     *
+     * @param key - String, the key of the query.
+     * @param generation - String, the generation being searched.
+     * @return List - the hits, or null if they are not cached.
+     */
+    public List<SearchHit> get(String key, String generation) {
+        Segment segment = segments[segmentOf(key)];
+        CachedHits entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && (isExpired(entry) || !entry.generation.equals(this.generation))) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || !entry.generation.equals(generation)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.hits;
+    }
+
+    /**
+     * Records the hits of a query, unless they were searched at another
+     * generation than the current one.
+     *
+     * @param key - String, the key of the query.
+     * @param generation - String, the generation the hits were searched at.
+     * @param queryHits - List, the hits.
+     */
+    public void put(String key, String generation, List<SearchHit> queryHits) {
+        if (!generation.equals(this.generation)) {
+            return;
+        }
+        put(key, new CachedHits(Collections.unmodifiableList(new ArrayList<>(queryHits)), generation,
+                System.currentTimeMillis()));
+    }
+
+    private void put(String key, CachedHits entry) {
+        Segment segment = segments[segmentOf(key)];
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Returns the segment a key is held in.
+     *
+     * @param key - String, the key of the query.
+     * @return int - the index of the segment.
+     */
+    int segmentOf(String key) {
+        return (key.hashCode() & 0x7fffffff) % segments.length;
+    }
+
+    private boolean isExpired(CachedHits entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.created > ttlMillis;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return double - the fraction of lookups served from the cache, or 0
+     *         if there were no lookups.
+     */
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Loads the entries of a cache file saved over the current commit of
+     * the index, skipping any that have expired. setGeneration must have
+     * been called first.
+     *
+     * @param file - Path, the cache file.
+     * @return int - the number of entries loaded.
+     * @throws IOException
+     */
+    public int load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            String current = generation;
+            if (in.readInt() != FILE_VERSION || !readString(in).equals(current)) {
+                return 0;
+            }
+            for (int entries = in.readInt(); entries > 0; entries--) {
+                String key = readString(in);
+                long created = in.readLong();
+                List<SearchHit> queryHits = new ArrayList<>();
+                for (int hitCount = in.readInt(); hitCount > 0; hitCount--) {
+                    int doc = in.readInt();
+                    String title = in.readBoolean() ? readString(in) : null;
+                    queryHits.add(new SearchHit(doc, title, in.readFloat()));
+                }
+                CachedHits entry = new CachedHits(Collections.unmodifiableList(queryHits), current, created);
+                if (!isExpired(entry)) {
+                    put(key, entry);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Saves every entry of the current commit, along with the commit,
+     * replacing the file atomically so that a run that dies while saving
+     * leaves the old file intact. Keys and titles are written as UTF-8
+     * bytes after their length, so they are not limited to 64 KB.
+     *
+     * @param file - Path, the cache file.
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        String current = generation;
+        Map<String, CachedHits> entries = new LinkedHashMap<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Map.Entry<String, CachedHits> entry : segment.entrySet()) {
+                    if (entry.getValue().generation.equals(current)) {
+                        entries.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                writeString(out, current);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, CachedHits> entry : entries.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue().created);
+                    out.writeInt(entry.getValue().hits.size());
+                    for (SearchHit hit : entry.getValue().hits) {
+                        out.writeInt(hit.getDoc());
+                        out.writeBoolean(hit.getTitle() != null);
+                        if (hit.getTitle() != null) {
+                            writeString(out, hit.getTitle());
+                        }
+                        out.writeFloat(hit.getScore());
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hit ratio=%.3f, entries=%d", getHits(), getMisses(), hitRatio(),
+                size());
+    }
+
+    /**
+     * The hits of one query, the generation of the index they were
+     * searched at and when.
+     */
+    private static final class CachedHits {
+        private final List<SearchHit> hits;
+        private final String generation;
+        private final long created;
+
+        CachedHits(List<SearchHit> hits, String generation, long created) {
+            this.hits = hits;
+            this.generation = generation;
+            this.created = created;
+        }
+    }
+
+    /**
+     * One segment of the cache, evicting its least recently used entry
+     * once full.
+     */
+    private static class Segment extends LinkedHashMap<String, CachedHits> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedHits> eldest) {
+            return size() > capacity;
+        }
+    }
+}
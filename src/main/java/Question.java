@@ -0,0 +1,68 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single jeopardy question: its category, the clue and the expected
+ * answer, which may list alternatives separated by '|'. The answer is
+ * compiled into an AnswerMatcher once, when the question is created.
+ */
+public class Question {
+    private final String category;
+    private final String clue;
+    private final String answer;
+    private final AnswerMatcher answerMatcher;
+
+    public Question(String category, String clue, String answer) {
+        this.category = category;
+        this.clue = clue;
+        this.answer = answer;
+        this.answerMatcher = new AnswerMatcher(answer);
+    }
+
+    /**
+     * Reads every question from a file in which each question takes four
+     * lines: category, clue, answer and a blank separator line.
+     *
+     * @param path - String, the path of the questions file.
+     * @return List - the questions in file order.
+     * @throws IOException
+     */
+    public static List<Question> readAll(String path) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String category;
+            while ((category = reader.readLine()) != null) {
+                String clue = reader.readLine();
+                String answer = reader.readLine();
+                if (clue == null || answer == null) {
+                    throw new IOException("Incomplete question at end of " + path);
+                }
+                questions.add(new Question(category, clue, answer));
+                // blank separator line
+                reader.readLine();
+            }
+        }
+        return questions;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getClue() {
+        return clue;
+    }
+
+    public String getAnswer() {
+        return answer;
+    }
+
+    public AnswerMatcher getAnswerMatcher() {
+        return answerMatcher;
+    }
+}
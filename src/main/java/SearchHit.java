@@ -0,0 +1,38 @@
+/**
+ * A single ranked search result: the document, its title and its score.
+ * The title key, which AnswerMatcher compares answers by, is read from the
+ * index along with the title, or derived from the title otherwise.
+ */
+public class SearchHit {
+    private final int doc;
+    private final String title;
+    private final long titleKey;
+    private final float score;
+
+    public SearchHit(int doc, String title, float score) {
+        this(doc, title, title == null ? 0 : AnswerMatcher.titleKey(title), score);
+    }
+
+    public SearchHit(int doc, String title, long titleKey, float score) {
+        this.doc = doc;
+        this.title = title;
+        this.titleKey = titleKey;
+        this.score = score;
+    }
+
+    public int getDoc() {
+        return doc;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getTitleKey() {
+        return titleKey;
+    }
+
+    public float getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,314 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.lucene.search.similarities.Similarity;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived search server that keeps one warm QueryEngine per index type
+ * and answers questions over HTTP on localhost.
+ *
+ * Questions are asked with:
+ *   GET /search?clue=...&category=...&index=positional&scoring=bm25&hits=10
+ * and answered with the ranked titles and scores as JSON. Only 'clue' is
+ * required; the index defaults to the first one loaded and the scoring to
+ * the one the server was started with. 'hits' must be between 1 and
+ * MAX_HITS.
+ *
+ * Every engine's reader is reopened in the background when its index
+ * changes, through the engine's SearcherManager.
+ *
+ * GET /metrics returns the per-stage metrics of every engine as JSON; they
+ * are also exposed through JMX.
+ */
+public class SearchServer {
+    private static final String[] INDEX_TYPES = { "positional", "lemma", "porter", "custom", "standard" };
+    private static final String[] SCORING_METHODS = { "bm25", "tfidf", "default" };
+    // the collector allocates arrays of this size up front
+    private static final int MAX_HITS = 1000;
+
+    private final Map<String, QueryEngine> engines = new LinkedHashMap<>();
+    private final Map<String, Similarity> similarities = new HashMap<>();
+    private HttpServer server;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Starts the server.
+     *
+     * Arguments are options in the form 'name=value':
+     *  port - the port to listen on (default 8080)
+     *  indexes - comma separated index types to serve (default all that exist)
+     *  scoring - the default scoring method (default bm25)
+     *  threads - number of requests handled at once (default 4)
+     *  refreshSeconds - how often to check for index changes (default 5)
+     *  directory - how each index is opened: auto, mmap, nio, heap or offheap
+     *              (default auto)
+     *  warm - whether to read the searched postings before serving (default true)
+     *  cache - number of queries whose hits each index caches (default 0, off)
+     *  cacheTtl - seconds cached hits stay valid, or 0 until the index changes
+     *             (default 0)
+     *
+     * @param args - String Array, the server options.
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.err.println("Error! Options must be given as name=value: " + arg);
+                throw new RuntimeException();
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        try {
+            SearchServer searchServer = new SearchServer();
+            String indexes = options.getOrDefault("indexes", String.join(",", INDEX_TYPES));
+            searchServer.loadEngines(indexes.split(","), options.getOrDefault("scoring", "bm25"),
+                    options.getOrDefault("directory", "auto"),
+                    Boolean.parseBoolean(options.getOrDefault("warm", "true")),
+                    Integer.parseInt(options.getOrDefault("cache", "0")),
+                    Long.parseLong(options.getOrDefault("cacheTtl", "0")));
+            searchServer.start(Integer.parseInt(options.getOrDefault("port", "8080")),
+                    Integer.parseInt(options.getOrDefault("threads", "4")),
+                    Integer.parseInt(options.getOrDefault("refreshSeconds", "5")));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error occured when starting search server");
+        }
+    }
+
+    /**
+     * Opens a QueryEngine for each index type. Index types whose index or
+     * models cannot be opened are skipped with a warning.
+     *
+     * @param indexTypes - String Array, the index types to serve.
+     * @param scoringMethod - String, the default scoring method.
+     * @param directoryMode - String, how each index is opened.
+     * @param warm - boolean, whether to warm each reader before use.
+     * @param cacheSize - int, the number of queries whose hits each index
+     *                  caches, or 0 for none.
+     * @param cacheTtl - long, the seconds cached hits stay valid, or 0
+     *                 until the index changes.
+     */
+    public void loadEngines(String[] indexTypes, String scoringMethod, String directoryMode, boolean warm,
+            int cacheSize, long cacheTtl) {
+        for (String scoring : SCORING_METHODS) {
+            similarities.put(scoring, QueryEngine.similarityFor(scoring));
+        }
+        for (String indexType : indexTypes) {
+            QueryEngine engine = null;
+            try {
+                engine = new QueryEngine(indexType, scoringMethod);
+                engine.setDirectoryMode(directoryMode);
+                engine.setWarm(warm);
+                engine.setResultCache(cacheSize, cacheTtl);
+                engine.open();
+                engine.loadModels();
+                engines.put(indexType, engine);
+                System.out.println("Loaded " + indexType + " index");
+            }
+            catch (Exception e) {
+                System.err.println("Skipping " + indexType + " index: " + e);
+                closeQuietly(engine);
+            }
+        }
+        if (engines.isEmpty()) {
+            throw new IllegalStateException("No index could be opened");
+        }
+    }
+
+    /**
+     * Starts listening for questions and refreshing the index readers.
+     *
+     * @param port - int, the port to listen on.
+     * @param threads - int, the number of requests handled at once.
+     * @param refreshSeconds - int, how often to check for index changes.
+     * @throws IOException
+     */
+    public void start(int port, int threads, int refreshSeconds) throws IOException {
+        refresher = Executors.newSingleThreadScheduledExecutor();
+        refresher.scheduleWithFixedDelay(this::refreshAll, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        System.out.println("Search server listening on http://localhost:" + port + "/search");
+    }
+
+    /**
+     * Stops the server and closes every engine.
+     *
+     * @throws IOException
+     */
+    public void stop() throws IOException {
+        server.stop(0);
+        refresher.shutdown();
+        for (QueryEngine engine : engines.values()) {
+            engine.close();
+        }
+    }
+
+    /**
+     * Closes an engine that failed to load, releasing its readers and
+     * unregistering its metrics.
+     *
+     * @param engine - QueryEngine, the engine, or null if it was never built.
+     */
+    private static void closeQuietly(QueryEngine engine) {
+        if (engine == null) {
+            return;
+        }
+        try {
+            engine.close();
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Failed to close engine: " + e);
+        }
+    }
+
+    private void refreshAll() {
+        for (Map.Entry<String, QueryEngine> engine : engines.entrySet()) {
+            try {
+                engine.getValue().refresh();
+            }
+            catch (IOException e) {
+                System.err.println("Failed to refresh " + engine.getKey() + " index: " + e);
+            }
+        }
+    }
+
+    /**
+     * Answers a single question with the ranked titles and scores.
+     *
+     * @param exchange - HttpExchange, the request and its response.
+     * @throws IOException
+     */
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String clue = params.get("clue");
+            if (clue == null) {
+                respond(exchange, 400, "{\"error\":\"missing clue\"}");
+                return;
+            }
+            String indexType = params.getOrDefault("index", engines.keySet().iterator().next());
+            QueryEngine engine = engines.get(indexType);
+            if (engine == null) {
+                respond(exchange, 404, "{\"error\":" + quote("index not loaded: " + indexType) + "}");
+                return;
+            }
+            String scoring = params.get("scoring");
+            Similarity similarity = scoring == null ? null : similarities.get(scoring);
+            if (scoring != null && similarity == null) {
+                respond(exchange, 400, "{\"error\":" + quote("unknown scoring: " + scoring) + "}");
+                return;
+            }
+            int numHits = Integer.parseInt(params.getOrDefault("hits", "10"));
+            if (numHits < 1 || numHits > MAX_HITS) {
+                respond(exchange, 400, "{\"error\":" + quote("hits must be between 1 and " + MAX_HITS) + "}");
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<SearchHit> hits = engine.search(params.getOrDefault("category", ""), clue, similarity, numHits);
+            double tookMs = (System.nanoTime() - start) / 1e6;
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"index\":").append(quote(indexType))
+                .append(",\"tookMs\":").append(String.format("%.3f", tookMs))
+                .append(",\"hits\":[");
+            for (int i = 0; i < hits.size(); i++) {
+                SearchHit hit = hits.get(i);
+                json.append(i == 0 ? "" : ",")
+                    .append("{\"rank\":").append(i + 1)
+                    .append(",\"title\":").append(hit.getTitle() == null ? "null" : quote(hit.getTitle()))
+                    .append(",\"score\":").append(hit.getScore())
+                    .append('}');
+            }
+            json.append("]}");
+            respond(exchange, 200, json.toString());
+        }
+        catch (NumberFormatException e) {
+            respond(exchange, 400, "{\"error\":" + quote("bad number: " + e.getMessage()) + "}");
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            respond(exchange, 500, "{\"error\":" + quote(e.toString()) + "}");
+        }
+    }
+
+    /**
+     * Answers with the metrics of every engine, as a JSON array.
+     *
+     * @param exchange - HttpExchange, the request and its response.
+     * @throws IOException
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (QueryEngine engine : engines.values()) {
+            json.append(json.length() > 1 ? "," : "").append(engine.getMetrics().toJson());
+        }
+        respond(exchange, 200, json.append(']').toString());
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, split), "UTF-8"),
+                        URLDecoder.decode(pair.substring(split + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Quotes a string as a JSON string literal.
+     *
+     * @param str - String, the string to quote.
+     * @return String - the quoted and escaped string.
+     */
+    static String quote(String str) {
+        StringBuilder quoted = new StringBuilder(str.length() + 2).append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,285 @@
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes an index split into a number of shards, one IndexWriter each.
+ *
+ * A document goes to the shard given by hashing its docID, so that
+ * consecutive articles are spread evenly over the shards. Deletes go to
+ * every shard, and replacing a document by key also removes the earlier
+ * version from whichever shard held it, since a changed wiki file gets
+ * new docIDs.
+ *
+ * Every shard is committed with the same commit user data. A crash can
+ * leave some shards committed and others not, so only the entries all
+ * shards agree on count as committed.
+ *
+ * The following methods are defined:
+ *  - shardOf - the shard a docID is written to.
+ *  - addDocument / updateDocument - write a document to its shard.
+ *  - deleteDocuments / deleteAll - delete from every shard.
+ *  - getCommonCommitData / getAnyCommitData - read the last commits.
+ *  - commit / close - commit or close every shard.
+ *  - rollback - close every shard without committing.
+ */
+public class ShardedIndexWriter implements AutoCloseable {
+    private final List<Directory> directories = new ArrayList<>();
+    private final List<IndexWriter> writers = new ArrayList<>();
+
+    /**
+     * Opens a writer on every shard of an index. An existing index with a
+     * different number of shards is deleted first, since its documents
+     * are in the wrong shards.
+     *
+     * @param indexPath - Path, the index directory.
+     * @param shards - int, the number of shards.
+     * @param openMode - OpenMode, how to open each shard.
+     * @param configs - Supplier, a new IndexWriterConfig for each shard.
+     * @throws IOException
+     */
+    public ShardedIndexWriter(Path indexPath, int shards, OpenMode openMode, Supplier<IndexWriterConfig> configs)
+            throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1, got " + shards);
+        }
+        List<Path> existing = IndexDirectories.shardPaths(indexPath);
+        if (!existing.isEmpty() && existing.size() != shards) {
+            System.out.println("Index has " + existing.size() + " shard(s), rebuilding it with " + shards);
+            deleteShards(indexPath, existing);
+            openMode = OpenMode.CREATE;
+        }
+        try {
+            for (Path path : IndexDirectories.shardPaths(indexPath, shards)) {
+                Directory directory = FSDirectory.open(path);
+                directories.add(directory);
+                writers.add(new IndexWriter(directory, configs.get().setOpenMode(openMode)));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the shards of an index, leaving any other files alone.
+     *
+     * @param indexPath - Path, the index directory.
+     * @param shards - List, the shard directories.
+     * @throws IOException
+     */
+    private static void deleteShards(Path indexPath, List<Path> shards) throws IOException {
+        for (Path shard : shards) {
+            if (shard.equals(indexPath)) {
+                try (Directory directory = FSDirectory.open(indexPath)) {
+                    for (String file : directory.listAll()) {
+                        if (Files.isRegularFile(indexPath.resolve(file))) {
+                            directory.deleteFile(file);
+                        }
+                    }
+                }
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(shard)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shard a docID is written to.
+     *
+     * @param docId - int, the docID of the document.
+     * @return int - the shard.
+     */
+    public int shardOf(int docId) {
+        return Math.floorMod(Integer.hashCode(docId), writers.size());
+    }
+
+    public void addDocument(int docId, Document doc) throws IOException {
+        writers.get(shardOf(docId)).addDocument(doc);
+    }
+
+    /**
+     * Writes a document to its shard, replacing any document with the
+     * same key in any shard.
+     *
+     * @param docId - int, the docID of the document.
+     * @param key - Term, the unique key of the document.
+     * @param doc - Document, the document.
+     * @throws IOException
+     */
+    public void updateDocument(int docId, Term key, Document doc) throws IOException {
+        int target = shardOf(docId);
+        for (int shard = 0; shard < writers.size(); shard++) {
+            if (shard == target) {
+                writers.get(shard).updateDocument(key, doc);
+            }
+            else {
+                writers.get(shard).deleteDocuments(key);
+            }
+        }
+    }
+
+    public void deleteDocuments(Term term) throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.deleteDocuments(term);
+        }
+    }
+
+    public void deleteDocuments(Query query) throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.deleteDocuments(query);
+        }
+    }
+
+    public void deleteAll() throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.deleteAll();
+        }
+    }
+
+    public int numDocs() {
+        int numDocs = 0;
+        for (IndexWriter writer : writers) {
+            numDocs += writer.getDocStats().numDocs;
+        }
+        return numDocs;
+    }
+
+    /**
+     * Returns the commit user data every shard was last committed with.
+     *
+     * @return Map - the entries that are the same in every shard.
+     */
+    public Map<String, String> getCommonCommitData() {
+        Map<String, String> common = null;
+        for (IndexWriter writer : writers) {
+            Map<String, String> shardData = commitData(writer);
+            if (common == null) {
+                common = shardData;
+            }
+            else {
+                common.entrySet().retainAll(shardData.entrySet());
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Returns the commit user data any shard was last committed with, to
+     * find the entries a crash left in only some shards.
+     *
+     * @return Map - the entries of every shard.
+     */
+    public Map<String, String> getAnyCommitData() {
+        Map<String, String> any = new HashMap<>();
+        for (IndexWriter writer : writers) {
+            any.putAll(commitData(writer));
+        }
+        return any;
+    }
+
+    private static Map<String, String> commitData(IndexWriter writer) {
+        Map<String, String> data = new HashMap<>();
+        Iterable<Map.Entry<String, String>> liveData = writer.getLiveCommitData();
+        if (liveData != null) {
+            for (Map.Entry<String, String> entry : liveData) {
+                data.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Commits every shard with the same commit user data.
+     *
+     * @param commitData - Map, the commit user data.
+     * @throws IOException
+     */
+    public void commit(Map<String, String> commitData) throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.setLiveCommitData(commitData.entrySet());
+            writer.commit();
+        }
+    }
+
+    /**
+     * Commits and closes every shard with the same commit user data.
+     *
+     * @param commitData - Map, the commit user data.
+     * @throws IOException
+     */
+    public void close(Map<String, String> commitData) throws IOException {
+        for (IndexWriter writer : writers) {
+            writer.setLiveCommitData(commitData.entrySet());
+        }
+        close();
+    }
+
+    /**
+     * Closes every shard without committing, discarding every change made
+     * since the last commit, as if the run had died.
+     *
+     * @throws IOException
+     */
+    public void rollback() throws IOException {
+        IOException failure = null;
+        for (IndexWriter writer : writers) {
+            try {
+                writer.rollback();
+            }
+            catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        for (Directory directory : directories) {
+            directory.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes every shard, committing whatever each holds.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (IndexWriter writer : writers) {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        for (Directory directory : directories) {
+            directory.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryRescorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.Similarity;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches every shard of an index and merges their hits, keeping only
+ * the best scoring document for each title.
+ *
+ * Each shard is searched with TitleCollapsingCollector for its own top
+ * unique titles, on the executor if there is one, and the results are
+ * merged with TopDocs.merge. A title in the overall top N has its best
+ * document in the top N unique titles of that document's shard, so the
+ * merge only has to drop titles that also appear higher up in another
+ * shard.
+ *
+ * Scores are only comparable across shards if every shard scores with
+ * the same statistics, so each shard searcher reports the term and field
+ * statistics of the whole index, summed over the shards. A sharded index
+ * then ranks its documents exactly as the same documents in one index.
+ *
+ * Hits are numbered like the documents of a MultiReader over the shards:
+ * the docID within a shard plus the documents of the shards before it.
+ *
+ * The following methods are defined:
+ *  - acquire / release - take and return a searcher from every shard.
+ *  - withSimilarity - the same shards scored with another Similarity.
+ *  - search - searches every shard and merges the top unique titles.
+ *  - rescore - rescores the hits of search with another query.
+ *  - toSearchHit - looks up the title of a hit.
+ *  - getGeneration - identifies the commit of every shard.
+ */
+public class ShardedSearcher {
+    private final List<TitleSearcher> shards;
+    private final int[] docBases;
+    private final ExecutorService executor;
+
+    private ShardedSearcher(List<TitleSearcher> shards, ExecutorService executor) {
+        this.shards = shards;
+        this.executor = executor;
+        this.docBases = new int[shards.size()];
+        for (int shard = 1; shard < shards.size(); shard++) {
+            docBases[shard] = docBases[shard - 1] + shards.get(shard - 1).getIndexReader().maxDoc();
+        }
+    }
+
+    /**
+     * Acquires the current searcher of every shard. A single shard is
+     * searched as is; several shards are wrapped to score with the
+     * statistics of the whole index.
+     *
+     * @param managers - List, the SearcherManager of each shard.
+     * @param executor - ExecutorService, searches the shards in parallel,
+     *                 or the slices of a single shard, or null to search
+     *                 on the calling thread.
+     * @return ShardedSearcher - the searcher, to be released when done.
+     * @throws IOException
+     */
+    public static ShardedSearcher acquire(List<SearcherManager> managers, ExecutorService executor)
+            throws IOException {
+        List<TitleSearcher> acquired = new ArrayList<>(managers.size());
+        try {
+            for (SearcherManager manager : managers) {
+                acquired.add((TitleSearcher) manager.acquire());
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            for (int shard = 0; shard < acquired.size(); shard++) {
+                managers.get(shard).release(acquired.get(shard));
+            }
+            throw e;
+        }
+        ShardedSearcher searcher = new ShardedSearcher(acquired, executor);
+        return acquired.size() == 1 ? searcher : searcher.withSimilarity(acquired.get(0).getSimilarity(true));
+    }
+
+    /**
+     * Returns every shard searcher to the manager it was acquired from.
+     *
+     * @param managers - List, the SearcherManager of each shard, in the
+     *                 order they were acquired from.
+     * @throws IOException
+     */
+    public void release(List<SearcherManager> managers) throws IOException {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            managers.get(shard).release(unwrap(shards.get(shard)));
+        }
+    }
+
+    private static TitleSearcher unwrap(TitleSearcher searcher) {
+        return searcher instanceof ShardSearcher ? ((ShardSearcher) searcher).acquired : searcher;
+    }
+
+    /**
+     * Returns a searcher over the same shards that scores with another
+     * Similarity, sharing the title lookups of this one.
+     *
+     * @param similarity - Similarity, the similarity to score with.
+     * @return ShardedSearcher - the searcher; it is released through this
+     *         one and must not outlive it.
+     */
+    public ShardedSearcher withSimilarity(Similarity similarity) {
+        List<IndexReader> readers = new ArrayList<>(shards.size());
+        for (TitleSearcher shard : shards) {
+            readers.add(shard.getIndexReader());
+        }
+        List<TitleSearcher> rescoring = new ArrayList<>(shards.size());
+        for (TitleSearcher shard : shards) {
+            TitleSearcher searcher = shards.size() == 1
+                    ? new TitleSearcher(shard.getIndexReader(), executor, shard.getTitles())
+                    : new ShardSearcher(unwrap(shard), readers);
+            searcher.setSimilarity(similarity);
+            rescoring.add(searcher);
+        }
+        return new ShardedSearcher(rescoring, executor);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public Similarity getSimilarity() {
+        return shards.get(0).getSimilarity(true);
+    }
+
+    /**
+     * Identifies the commit each shard was opened at, which changes
+     * whenever any shard is reopened on a new commit.
+     *
+     * @return String - the reader version of every shard.
+     */
+    public String getGeneration() {
+        StringBuilder generation = new StringBuilder();
+        for (TitleSearcher shard : shards) {
+            IndexReader reader = shard.getIndexReader();
+            long version = reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : -1;
+            generation.append(generation.length() > 0 ? "," : "").append(version);
+        }
+        return generation.toString();
+    }
+
+    /**
+     * Returns the number of titles the shards have loaded from stored
+     * fields rather than doc values.
+     *
+     * @return long - the number of stored-field title loads.
+     */
+    public long getStoredFieldLoads() {
+        long loads = 0;
+        for (TitleSearcher shard : shards) {
+            loads += shard.getTitles().getStoredFieldLoads();
+        }
+        return loads;
+    }
+
+    /**
+     * Searches every shard and returns the top unique titles, as hits of
+     * the shard given by their shardIndex.
+     *
+     * @param query - Query, the query to run.
+     * @param numHits - int, the number of unique titles to return.
+     * @return ScoreDoc Array - the hits, best first.
+     * @throws IOException
+     */
+    public ScoreDoc[] search(Query query, int numHits) throws IOException {
+        if (shards.size() == 1) {
+            return searchShard(0, query, numHits).scoreDocs;
+        }
+
+        TopDocs[] shardHits = new TopDocs[shards.size()];
+        if (executor == null) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                shardHits[shard] = searchShard(shard, query, numHits);
+            }
+        }
+        else {
+            List<Future<TopDocs>> futures = new ArrayList<>(shards.size());
+            for (int shard = 0; shard < shards.size(); shard++) {
+                int index = shard;
+                futures.add(executor.submit(() -> searchShard(index, query, numHits)));
+            }
+            try {
+                for (int shard = 0; shard < shards.size(); shard++) {
+                    shardHits[shard] = futures.get(shard).get();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while searching shards", e);
+            }
+            catch (ExecutionException e) {
+                throw new IOException("Failed to search shard", e.getCause());
+            }
+        }
+
+        // the same title may be the best of its group in several shards
+        ScoreDoc[] merged = TopDocs.merge(numHits * shards.size(), shardHits).scoreDocs;
+        // at most numHits titles are kept, so a scan is cheaper than hashing them
+        String[] seen = new String[numHits];
+        ScoreDoc[] unique = new ScoreDoc[numHits];
+        int count = 0;
+        for (int i = 0; i < merged.length && count < numHits; i++) {
+            String title = shards.get(merged[i].shardIndex).getTitles().getTitle(merged[i].doc);
+            if (!contains(seen, count, title)) {
+                seen[count] = title;
+                unique[count++] = merged[i];
+            }
+        }
+        return count == numHits ? unique : Arrays.copyOf(unique, count);
+    }
+
+    private static boolean contains(String[] titles, int count, String title) {
+        for (int i = 0; i < count; i++) {
+            if (Objects.equals(titles[i], title)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rescores the hits of search with another query, typically one that
+     * is too expensive to run over the whole index, and keeps the best.
+     * Each hit is rescored on its own shard, so with the statistics of
+     * the whole index. A hit the query does not match scores 0 on it.
+     *
+     * @param query - Query, the query to rescore with.
+     * @param hits - ScoreDoc Array, hits returned by search.
+     * @param numHits - int, the number of hits to return.
+     * @param addScores - boolean, whether the score of the query is added
+     *                  to the score of each hit rather than replacing it.
+     * @return ScoreDoc Array - the best rescored hits, best first.
+     * @throws IOException
+     */
+    public ScoreDoc[] rescore(Query query, ScoreDoc[] hits, int numHits, boolean addScores) throws IOException {
+        QueryRescorer rescorer = new QueryRescorer(query) {
+            @Override
+            protected float combine(float firstPassScore, boolean secondPassMatches, float secondPassScore) {
+                float score = secondPassMatches ? secondPassScore : 0;
+                return addScores ? firstPassScore + score : score;
+            }
+        };
+        List<List<ScoreDoc>> shardHits = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            shardHits.add(new ArrayList<>());
+        }
+        for (ScoreDoc hit : hits) {
+            shardHits.get(Math.max(hit.shardIndex, 0)).add(hit);
+        }
+        TopDocs[] rescored = new TopDocs[shards.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            ScoreDoc[] candidates = shardHits.get(shard).toArray(new ScoreDoc[0]);
+            rescored[shard] = rescorer.rescore(shards.get(shard),
+                    new TopDocs(candidates.length, candidates, Float.NaN), numHits);
+        }
+        return TopDocs.merge(numHits, rescored).scoreDocs;
+    }
+
+    /**
+     * Looks up the title of a hit returned by search.
+     *
+     * @param hit - ScoreDoc, the hit.
+     * @return SearchHit - the hit with its title, numbered across shards.
+     * @throws IOException
+     */
+    public SearchHit toSearchHit(ScoreDoc hit) throws IOException {
+        int shard = Math.max(hit.shardIndex, 0);
+        TitleLookup titles = shards.get(shard).getTitles();
+        String title = titles.getTitle(hit.doc);
+        return new SearchHit(docBases[shard] + hit.doc, title, titles.getTitleKey(hit.doc, title), hit.score);
+    }
+
+    private TopDocs searchShard(int shard, Query query, int numHits) throws IOException {
+        TitleSearcher searcher = shards.get(shard);
+        return searcher.search(query, TitleCollapsingCollector.manager(searcher.getTitles(), numHits));
+    }
+
+    /**
+     * A searcher over one shard that scores with the statistics of every
+     * shard together.
+     */
+    private static final class ShardSearcher extends TitleSearcher {
+        private final TitleSearcher acquired;
+        private final List<IndexReader> allShards;
+
+        ShardSearcher(TitleSearcher acquired, List<IndexReader> allShards) {
+            super(acquired.getIndexReader(), null, acquired.getTitles());
+            this.acquired = acquired;
+            this.allShards = allShards;
+        }
+
+        @Override
+        public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+            long docFreq = 0;
+            long totalTermFreq = 0;
+            for (IndexReader reader : allShards) {
+                docFreq += reader.docFreq(term);
+                long termFreq = reader.totalTermFreq(term);
+                totalTermFreq = termFreq < 0 || totalTermFreq < 0 ? -1 : totalTermFreq + termFreq;
+            }
+            return new TermStatistics(term.bytes(), docFreq, totalTermFreq);
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(String field) throws IOException {
+            long maxDoc = 0;
+            long docCount = 0;
+            long sumTotalTermFreq = 0;
+            long sumDocFreq = 0;
+            for (IndexReader reader : allShards) {
+                maxDoc += reader.maxDoc();
+                Terms terms = MultiFields.getTerms(reader, field);
+                if (terms != null) {
+                    docCount = sum(docCount, terms.getDocCount());
+                    sumTotalTermFreq = sum(sumTotalTermFreq, terms.getSumTotalTermFreq());
+                    sumDocFreq = sum(sumDocFreq, terms.getSumDocFreq());
+                }
+            }
+            return new CollectionStatistics(field, maxDoc, docCount, sumTotalTermFreq, sumDocFreq);
+        }
+
+        private static long sum(long total, long value) {
+            return total < 0 || value < 0 ? -1 : total + value;
+        }
+    }
+}
@@ -1,27 +1,122 @@
-import org.apache.lucene.search.similarities.BasicStats;
-import org.apache.lucene.search.similarities.SimilarityBase;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.BytesRef;
 
-public class TFIDFSimilarity extends SimilarityBase {
+/**
+ * A custom implementation of the tf-idf weighting method:
+ *  score = boost * (1 + log2(tf)) * log2((numDocs + 1) / docFreq)
+ *
+ * Everything that depends only on the term is worked out once per query
+ * term, when its weight is computed, and 1 + log2(tf) is looked up in a
+ * table for the small term frequencies that make up almost every posting,
+ * so scoring a posting is a lookup and a multiplication.
+ *
+ * The score does not depend on the document length, so the scorer never
+ * reads norms. Norms are still written the way BM25Similarity writes
+ * them, so an index can be searched with either similarity.
+ *
+ * A phrase scores as the sum of the idf of its terms, as SimilarityBase
+ * scores it.
+ */
+public class TFIDFSimilarity extends Similarity {
+    private static final Similarity NORMS = new BM25Similarity();
+    private static final double LOG_2 = Math.log(2);
+    private static final float[] TF_TABLE = new float[256];
+
+    static {
+        for (int freq = 1; freq < TF_TABLE.length; freq++) {
+            TF_TABLE[freq] = tf(freq);
+        }
+    }
+
+    private static float tf(float termFreq) {
+        return (float) (1 + Math.log(termFreq) / LOG_2);
+    }
 
     /**
-     * A custom implementation of the tf-idf weighting method to create
-     * a score.
-     * 
-     * @param stats - BasicStats, contains statistics of the entire index.
-     * @param termFreq - float, the term frequency of a given term
-     * @param docLength - float, the document length.
-     * @return float - the score
+     * Returns the idf of a term, over the documents that have the field.
+     *
+     * @param docFreq - long, the number of documents the term occurs in.
+     * @param numDocs - long, the number of documents in the collection.
+     * @return float - the idf
      */
+    static float idf(long docFreq, long numDocs) {
+        return (float) (Math.log((numDocs + 1) / (double) docFreq) / LOG_2);
+    }
+
+    @Override
+    public long computeNorm(FieldInvertState state) {
+        return NORMS.computeNorm(state);
+    }
+
+    @Override
+    public SimWeight computeWeight(float boost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        long numDocs = collectionStats.docCount() == -1 ? collectionStats.maxDoc() : collectionStats.docCount();
+        float idf = 0;
+        for (TermStatistics stats : termStats) {
+            idf += idf(stats.docFreq(), numDocs);
+        }
+        return new TFIDFWeight(boost, idf);
+    }
+
     @Override
-    protected float score(BasicStats stats, float termFreq, float docLength) {
-        double tf = 1 + (Math.log(termFreq) / Math.log(2));
-        double idf = Math.log((stats.getNumberOfDocuments() + 1) / stats.getDocFreq()) / Math.log(2);
-        float similarity = (float) (tf * idf);
-        return similarity;
+    public SimScorer simScorer(SimWeight weight, LeafReaderContext context) {
+        TFIDFWeight tfidfWeight = (TFIDFWeight) weight;
+        float weightValue = tfidfWeight.boost * tfidfWeight.idf;
+        return new SimScorer() {
+            @Override
+            public float score(int doc, float freq) {
+                int intFreq = (int) freq;
+                float tf = intFreq == freq && intFreq > 0 && intFreq < TF_TABLE.length ? TF_TABLE[intFreq] : tf(freq);
+                return tf * weightValue;
+            }
+
+            // still abstract in SimScorer, though deprecated; sloppy phrases score as in SimilarityBase
+            @Override
+            @SuppressWarnings("deprecation")
+            public float computeSlopFactor(int distance) {
+                return 1.0f / (distance + 1);
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public float computePayloadFactor(int doc, int start, int end, BytesRef payload) {
+                return 1f;
+            }
+
+            @Override
+            public Explanation explain(int doc, Explanation freq) {
+                float tf = tf(freq.getValue());
+                return Explanation.match(score(doc, freq.getValue()), "score(doc=" + doc + ", freq=" + freq.getValue()
+                        + "), product of:",
+                        Explanation.match(tfidfWeight.boost, "boost"),
+                        Explanation.match(tf, "tf, 1 + log2(freq)", freq),
+                        Explanation.match(tfidfWeight.idf, "idf, log2((docCount + 1) / docFreq), summed over terms"));
+            }
+        };
     }
 
     @Override
     public String toString() {
-        return "";
+        return "TFIDF";
+    }
+
+    /**
+     * The part of the score that is the same for every posting of a
+     * query term.
+     */
+    private static final class TFIDFWeight extends SimWeight {
+        private final float boost;
+        private final float idf;
+
+        TFIDFWeight(float boost, float idf) {
+            this.boost = boost;
+            this.idf = idf;
+        }
     }
 }
@@ -0,0 +1,134 @@
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+
+/**
+ * Lemmatizes text with the OpenNLP POS tagger and dictionary lemmatizer.
+ * Shared by IndexBuilder and QueryEngine.
+ *
+ * Text is split into sentences and tagged one sentence at a time, rather
+ * than as a single sentence holding the whole article. The POS model and
+ * dictionary are loaded once and shared, while each thread gets its own
+ * POSTaggerME and output buffer, so one instance can be used from many
+ * threads at once.
+ *
+ * Lemmas are looked up through a LemmaCache in front of the dictionary,
+ * since the same (token, tag) pairs repeat throughout the corpus.
+ *
+ * The following methods are defined:
+ *  - lemmatize - lemmatizes a string of text.
+ *  - getCache - the lemma cache, for reporting its counters.
+ */
+public class TextLemmatizer {
+    public static final String POS_MODEL_PATH = "src/main/resources/dictionary/en-pos-maxent.bin";
+    public static final String DICTIONARY_PATH = "src/main/resources/dictionary/en-lemmatizer.dict";
+    public static final int DEFAULT_CACHE_SIZE = 200_000;
+
+    // a sentence ends at a line break or at terminal punctuation followed by whitespace
+    private static final Pattern SENTENCE_SPLIT = Pattern.compile("\\n+|(?<=[.!?])\\s+");
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[\\s@&.?$+-/=]+");
+
+    private final POSModel posModel;
+    private final DictionaryLemmatizer lemmatizer;
+    private final LemmaCache cache;
+    private final ThreadLocal<POSTaggerME> posTaggers;
+    private final ThreadLocal<StringBuilder> buffers;
+
+    /**
+     * Loads the default POS model and lemma dictionary.
+     *
+     * @throws IOException
+     */
+    public TextLemmatizer() throws IOException {
+        this(POS_MODEL_PATH, DICTIONARY_PATH, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Loads the given POS model and lemma dictionary.
+     *
+     * @param posModelPath - String, path to the OpenNLP POS model.
+     * @param dictionaryPath - String, path to the lemma dictionary.
+     * @param cacheSize - int, the maximum number of lemmas to cache.
+     * @throws IOException
+     */
+    public TextLemmatizer(String posModelPath, String dictionaryPath, int cacheSize) throws IOException {
+        try (InputStream posModelIn = new FileInputStream(posModelPath);
+             InputStream dictLemmatizer = new FileInputStream(dictionaryPath)) {
+            posModel = new POSModel(posModelIn);
+            lemmatizer = new DictionaryLemmatizer(dictLemmatizer);
+        }
+        posTaggers = ThreadLocal.withInitial(() -> new POSTaggerME(posModel));
+        buffers = ThreadLocal.withInitial(StringBuilder::new);
+        cache = new LemmaCache(cacheSize);
+    }
+
+    public LemmaCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Lemmatizes a given string. Tokens the dictionary has no lemma for
+     * are kept as they are, and all tokens are joined by single spaces.
+     *
+     * @param str - String, the string to lemmatize.
+     * @return String - the string once lemmatized.
+     */
+    public String lemmatize(String str) {
+        POSTaggerME posTagger = posTaggers.get();
+        StringBuilder ret = buffers.get();
+        ret.setLength(0);
+        for (String sentence : SENTENCE_SPLIT.split(str)) {
+            String[] tokens = tokenize(sentence);
+            if (tokens.length == 0) {
+                continue;
+            }
+            String[] tags = posTagger.tag(tokens);
+            for (int i = 0; i < tokens.length; i++) {
+                if (ret.length() > 0) {
+                    ret.append(' ');
+                }
+                ret.append(cache.get(tokens[i], tags[i], this::lookupLemma));
+            }
+        }
+        String lemmatized = ret.toString();
+        // don't pin the memory of a very long article to the thread
+        if (ret.capacity() > 1 << 20) {
+            buffers.remove();
+        }
+        return lemmatized;
+    }
+
+    /**
+     * Looks up the lemma of a single token in the dictionary, keeping the
+     * token as it is when the dictionary has no lemma for it.
+     *
+     * @param token - String, the token to lemmatize.
+     * @param tag - String, the POS tag of the token.
+     * @return String - the lemma.
+     */
+    private String lookupLemma(String token, String tag) {
+        String lemma = lemmatizer.lemmatize(new String[] { token }, new String[] { tag })[0];
+        return lemma.equals("O") ? token : lemma;
+    }
+
+    /**
+     * Splits a sentence into tokens, dropping the empty token produced when
+     * the sentence starts with a delimiter.
+     *
+     * @param sentence - String, the sentence to tokenize.
+     * @return String Array - the tokens of the sentence.
+     */
+    private static String[] tokenize(String sentence) {
+        String[] tokens = TOKEN_SPLIT.split(sentence);
+        if (tokens.length > 0 && tokens[0].isEmpty()) {
+            String[] trimmed = new String[tokens.length - 1];
+            System.arraycopy(tokens, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,210 @@
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.LongValues;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the top scoring documents while keeping only the best scoring
+ * document for each title, so a single search pass returns the top unique
+ * titles without over-fetching.
+ *
+ * At most numHits groups are kept. A new group only enters by beating the
+ * weakest group kept so far, and that bar only rises, so a group that was
+ * pushed out can only come back with a document that beats its old best.
+ *
+ * Titles are compared by global ordinal from TitleLookup. For indexes
+ * without title doc values, they are compared by string, and only documents
+ * that could enter the top hits have their title loaded.
+ *
+ * The following methods are defined:
+ *  - manager - creates a CollectorManager for searching segments in parallel.
+ *  - getLeafCollector - collects the hits of one segment.
+ *  - topDocs - returns the collapsed hits, best first.
+ */
+public class TitleCollapsingCollector implements Collector {
+    private static final Comparator<ScoreDoc> BEST_FIRST = (a, b) ->
+            a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc);
+
+    private final TitleLookup titles;
+    private final int numHits;
+    private final long[] groups;
+    private final float[] scores;
+    private final int[] docs;
+    private final Map<String, Long> titleGroups;
+    private final AtomicLong nextTitleGroup;
+    private int size;
+    private int weakest;
+    private long totalHits;
+
+    /**
+     * Constructs a collector for the given number of unique titles.
+     *
+     * @param titles - TitleLookup, the titles of the searched reader.
+     * @param numHits - int, the number of unique titles to return.
+     */
+    public TitleCollapsingCollector(TitleLookup titles, int numHits) {
+        this(titles, numHits, new ConcurrentHashMap<>(), new AtomicLong());
+    }
+
+    private TitleCollapsingCollector(TitleLookup titles, int numHits,
+            Map<String, Long> titleGroups, AtomicLong nextTitleGroup) {
+        this.titles = titles;
+        this.titleGroups = titleGroups;
+        this.nextTitleGroup = nextTitleGroup;
+        this.numHits = numHits;
+        this.groups = new long[numHits];
+        this.scores = new float[numHits];
+        this.docs = new int[numHits];
+    }
+
+    @Override
+    public boolean needsScores() {
+        return true;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        int docBase = context.docBase;
+        SortedDocValues titleValues = titles.hasGlobalOrds()
+                ? context.reader().getSortedDocValues(TitleLookup.FIELD) : null;
+        LongValues globalOrds = titles.hasGlobalOrds() ? titles.getGlobalOrds(context) : null;
+
+        return new LeafCollector() {
+            private Scorer scorer;
+
+            @Override
+            public void setScorer(Scorer scorer) {
+                this.scorer = scorer;
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                totalHits++;
+                float score = scorer.score();
+                int globalDoc = docBase + doc;
+                if (size == numHits && !isBetter(score, globalDoc, weakest)) {
+                    return;
+                }
+                long group;
+                if (titleValues != null) {
+                    group = titleValues.advanceExact(doc)
+                            ? globalOrds.get(titleValues.ordValue()) : -1L - globalDoc;
+                }
+                else {
+                    String title = titles.getTitle(globalDoc);
+                    group = title == null ? -1L - globalDoc
+                            : titleGroups.computeIfAbsent(title, t -> nextTitleGroup.getAndIncrement());
+                }
+                collectGroup(group, score, globalDoc);
+            }
+        };
+    }
+
+    /**
+     * Creates a CollectorManager whose collectors each collapse one slice
+     * of segments and are merged afterwards. A title's best document is
+     * always kept by the collector of its slice, since every title that
+     * ranks above it there also ranks above it overall.
+     *
+     * @param titles - TitleLookup, the titles of the searched reader.
+     * @param numHits - int, the number of unique titles to return.
+     * @return CollectorManager - the manager to pass to IndexSearcher.search.
+     */
+    public static CollectorManager<TitleCollapsingCollector, TopDocs> manager(TitleLookup titles, int numHits) {
+        // slices must agree on the group of a title looked up by string
+        Map<String, Long> titleGroups = new ConcurrentHashMap<>();
+        AtomicLong nextTitleGroup = new AtomicLong();
+        return new CollectorManager<TitleCollapsingCollector, TopDocs>() {
+            @Override
+            public TitleCollapsingCollector newCollector() {
+                return new TitleCollapsingCollector(titles, numHits, titleGroups, nextTitleGroup);
+            }
+
+            @Override
+            public TopDocs reduce(Collection<TitleCollapsingCollector> collectors) {
+                TitleCollapsingCollector merged = newCollector();
+                for (TitleCollapsingCollector collector : collectors) {
+                    merged.totalHits += collector.totalHits;
+                    for (int i = 0; i < collector.size; i++) {
+                        merged.collectGroup(collector.groups[i], collector.scores[i], collector.docs[i]);
+                    }
+                }
+                return merged.topDocs();
+            }
+        };
+    }
+
+    /**
+     * Offers a document for its title group.
+     *
+     * @param group - long, the title group of the document.
+     * @param score - float, the score of the document.
+     * @param doc - int, the top-level docID of the document.
+     */
+    private void collectGroup(long group, float score, int doc) {
+        for (int i = 0; i < size; i++) {
+            if (groups[i] == group) {
+                if (isBetter(score, doc, i)) {
+                    scores[i] = score;
+                    docs[i] = doc;
+                    updateWeakest();
+                }
+                return;
+            }
+        }
+        if (size == numHits && !isBetter(score, doc, weakest)) {
+            return;
+        }
+        int slot = size < numHits ? size++ : weakest;
+        groups[slot] = group;
+        scores[slot] = score;
+        docs[slot] = doc;
+        updateWeakest();
+    }
+
+    /**
+     * Determines if a document ranks above the one kept in a slot. Ties
+     * on score go to the lower docID, matching TopDocs ordering.
+     */
+    private boolean isBetter(float score, int doc, int slot) {
+        return score > scores[slot] || (score == scores[slot] && doc < docs[slot]);
+    }
+
+    private void updateWeakest() {
+        weakest = 0;
+        for (int i = 1; i < size; i++) {
+            if (isBetter(scores[weakest], docs[weakest], i)) {
+                weakest = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the best document of each of the top title groups, best
+     * first. Fewer than numHits are returned if fewer titles matched.
+     *
+     * @return TopDocs - the collapsed hits.
+     */
+    public TopDocs topDocs() {
+        ScoreDoc[] hits = new ScoreDoc[size];
+        float maxScore = Float.NaN;
+        for (int i = 0; i < size; i++) {
+            hits[i] = new ScoreDoc(docs[i], scores[i]);
+            maxScore = Float.isNaN(maxScore) ? scores[i] : Math.max(maxScore, scores[i]);
+        }
+        Arrays.sort(hits, BEST_FIRST);
+        return new TopDocs(totalHits, hits, maxScore);
+    }
+}
@@ -0,0 +1,140 @@
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads document titles from the 'title' SortedDocValues column written by
+ * IndexBuilder, so that looking up a hit's title does not decompress the
+ * stored document and its full body.
+ *
+ * Segments of indexes built before titles had doc values fall back to
+ * loading only the stored 'title' field. Those loads are counted so the
+ * stats can show whether the hot path touches stored fields at all.
+ *
+ * The key AnswerMatcher compares answers by is read from the 'titleKey'
+ * doc values, and derived from the title in segments without them.
+ *
+ * When every segment has title doc values, an OrdinalMap is built once so
+ * that equal titles in different segments share one global ordinal.
+ *
+ * The following methods are defined:
+ *  - getTitle - returns the title of a document.
+ *  - getTitleKey - returns the answer-matching key of a document's title.
+ *  - hasGlobalOrds - whether titles can be compared by global ordinal.
+ *  - getGlobalOrds - maps a segment's title ordinals to global ordinals.
+ *  - getStoredFieldLoads - the number of stored-field fallbacks made.
+ */
+public class TitleLookup {
+    public static final String FIELD = "title";
+    public static final String KEY_FIELD = "titleKey";
+    private static final Set<String> STORED_FIELDS = Collections.singleton(FIELD);
+
+    private final List<LeafReaderContext> leaves;
+    private final boolean globalOrds;
+    private final OrdinalMap ordinalMap;
+    private final LongAdder storedFieldLoads = new LongAdder();
+
+    /**
+     * Constructs a lookup over every segment of the given reader.
+     *
+     * @param reader - IndexReader, the reader to look titles up in.
+     * @throws IOException
+     */
+    public TitleLookup(IndexReader reader) throws IOException {
+        this.leaves = reader.leaves();
+        boolean allSorted = true;
+        for (LeafReaderContext leaf : leaves) {
+            FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(FIELD);
+            allSorted &= info != null && info.getDocValuesType() == DocValuesType.SORTED;
+        }
+        globalOrds = allSorted;
+        if (allSorted && leaves.size() > 1) {
+            SortedDocValues[] values = new SortedDocValues[leaves.size()];
+            for (LeafReaderContext leaf : leaves) {
+                values[leaf.ord] = DocValues.getSorted(leaf.reader(), FIELD);
+            }
+            ordinalMap = OrdinalMap.build(null, values, PackedInts.DEFAULT);
+        }
+        else {
+            ordinalMap = null;
+        }
+    }
+
+    public boolean hasGlobalOrds() {
+        return globalOrds;
+    }
+
+    /**
+     * Returns the mapping from a segment's title ordinals to global
+     * ordinals. Only valid when hasGlobalOrds() is true.
+     *
+     * @param leaf - LeafReaderContext, the segment to map.
+     * @return LongValues - global ordinals indexed by segment ordinal.
+     */
+    public LongValues getGlobalOrds(LeafReaderContext leaf) {
+        return ordinalMap == null ? LongValues.IDENTITY : ordinalMap.getGlobalOrds(leaf.ord);
+    }
+
+    /**
+     * Returns the title of a document. Safe to call from several threads,
+     * since each call pulls a fresh doc values iterator.
+     *
+     * @param docId - int, the top-level docID of the document.
+     * @return String - the title, or null if the document has none.
+     * @throws IOException
+     */
+    public String getTitle(int docId) throws IOException {
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        LeafReader leafReader = leaf.reader();
+        int segmentDocId = docId - leaf.docBase;
+        SortedDocValues titles = leafReader.getSortedDocValues(FIELD);
+        if (titles == null) {
+            storedFieldLoads.increment();
+            return leafReader.document(segmentDocId, STORED_FIELDS).get(FIELD);
+        }
+        if (!titles.advanceExact(segmentDocId)) {
+            return null;
+        }
+        return titles.lookupOrd(titles.ordValue()).utf8ToString();
+    }
+
+    /**
+     * Returns the key of a document's title, as AnswerMatcher.titleKey
+     * computes it.
+     *
+     * @param docId - int, the top-level docID of the document.
+     * @param title - String, the title of the document, to derive the key
+     *              from if the segment has no title keys.
+     * @return long - the key, or 0 if the document has no title.
+     * @throws IOException
+     */
+    public long getTitleKey(int docId, String title) throws IOException {
+        if (title == null) {
+            return 0;
+        }
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        NumericDocValues keys = leaf.reader().getNumericDocValues(KEY_FIELD);
+        if (keys != null && keys.advanceExact(docId - leaf.docBase)) {
+            return keys.longValue();
+        }
+        return AnswerMatcher.titleKey(title);
+    }
+
+    public long getStoredFieldLoads() {
+        return storedFieldLoads.sum();
+    }
+}
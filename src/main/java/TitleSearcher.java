@@ -0,0 +1,43 @@
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An IndexSearcher that carries the TitleLookup of its reader, so that
+ * searchers handed out by a SearcherManager come with titles that match
+ * the reader they search.
+ */
+public class TitleSearcher extends IndexSearcher {
+    private final TitleLookup titles;
+
+    /**
+     * Constructs a searcher and builds the title lookup for its reader.
+     *
+     * @param reader - IndexReader, the reader to search.
+     * @param executor - ExecutorService, searches slices of segments in
+     *                 parallel, or null to search them on the calling thread.
+     * @throws IOException
+     */
+    public TitleSearcher(IndexReader reader, ExecutorService executor) throws IOException {
+        this(reader, executor, new TitleLookup(reader));
+    }
+
+    /**
+     * Constructs a searcher that shares an existing title lookup, e.g. to
+     * search the same reader with a different Similarity.
+     *
+     * @param reader - IndexReader, the reader to search.
+     * @param executor - ExecutorService, searches slices of segments in
+     *                 parallel, or null to search them on the calling thread.
+     * @param titles - TitleLookup, the titles of the reader.
+     */
+    public TitleSearcher(IndexReader reader, ExecutorService executor, TitleLookup titles) {
+        super(reader, executor);
+        this.titles = titles;
+    }
+
+    public TitleLookup getTitles() {
+        return titles;
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single parsed wikipedia article, held in memory between parsing a wiki
+ * file and writing its documents to the index.
+ */
+public class WikiArticle {
+    private final String title;
+    private final List<String> categories;
+    private String body;
+
+    /**
+     * Constructs an article with the given title and no categories or body.
+     *
+     * @param title - String, the title of the article.
+     */
+    public WikiArticle(String title) {
+        this.title = title;
+        this.categories = new ArrayList<>();
+        this.body = "";
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void addCategories(String categories) {
+        this.categories.add(categories);
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+}
@@ -0,0 +1,74 @@
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the token throughput of the analyzers the index types use, over
+ * the bodies of a synthetic corpus. The 'tokens' counter reports tokens per
+ * second alongside the passes over the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AnalyzerBenchmark {
+    @Param({ "custom", "english", "standard" })
+    public String analyzerType;
+
+    private Analyzer analyzer;
+    private List<WikiArticle> articles;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        if (analyzerType.equals("custom")) {
+            analyzer = new CustomAnalyzer();
+        }
+        else if (analyzerType.equals("english")) {
+            analyzer = new EnglishAnalyzer();
+        }
+        else {
+            analyzer = new StandardAnalyzer();
+        }
+        articles = new CorpusGenerator(BenchmarkCorpus.SEED).generateArticles(500);
+    }
+
+    @TearDown
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public void analyze(Counters counters, Blackhole bh) throws IOException {
+        for (WikiArticle article : articles) {
+            try (TokenStream tokens = analyzer.tokenStream("body", article.getBody())) {
+                CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+                tokens.reset();
+                while (tokens.incrementToken()) {
+                    bh.consume(term);
+                    counters.tokens++;
+                }
+                tokens.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A small synthetic wiki corpus written to a temporary directory, shared by
+ * the benchmarks and tests so they run offline and on the same data.
+ */
+public class BenchmarkCorpus {
+    public static final long SEED = CorpusGenerator.DEFAULT_SEED;
+
+    private final Path directory;
+    private final List<WikiArticle> articles;
+    private final List<Question> questions;
+
+    /**
+     * Generates the corpus and writes its wiki files.
+     *
+     * @param articleCount - int, the number of articles.
+     * @param articlesPerFile - int, the number of articles in each wiki file.
+     * @param questionCount - int, the number of questions about the articles.
+     * @throws IOException
+     */
+    public BenchmarkCorpus(int articleCount, int articlesPerFile, int questionCount) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(SEED);
+        articles = generator.generateArticles(articleCount);
+        questions = generator.generateQuestions(articles, questionCount);
+        directory = Files.createTempDirectory("miniwatson-bench");
+        CorpusGenerator.writeWiki(getWikiPath(), articles, articlesPerFile);
+    }
+
+    public Path getWikiPath() {
+        return directory.resolve("wiki-data");
+    }
+
+    public Path getIndexPath(String indexType) {
+        return directory.resolve(indexType + "-index");
+    }
+
+    public List<WikiArticle> getArticles() {
+        return articles;
+    }
+
+    public List<Question> getQuestions() {
+        return questions;
+    }
+
+    /**
+     * Deletes the wiki files and any index built under the corpus directory.
+     *
+     * @throws IOException
+     */
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of IndexBuilder.addToIndex for one wiki file of a
+ * synthetic corpus, for each index type. Each trial writes to a fresh index,
+ * cycling through the corpus files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexingBenchmark {
+    @Param({ "standard", "custom", "porter", "positional", "lemma" })
+    public String indexType;
+
+    private BenchmarkCorpus corpus;
+    private IndexBuilder indexBuilder;
+    private File[] wikiFiles;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = new BenchmarkCorpus(2_000, 50, 0);
+        wikiFiles = corpus.getWikiPath().toFile().listFiles();
+        Arrays.sort(wikiFiles);
+        indexBuilder = new IndexBuilder(indexType, corpus.getIndexPath(indexType).toString(),
+                corpus.getWikiPath().toString());
+        indexBuilder.openWriter();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        indexBuilder.closeWriter();
+        corpus.delete();
+    }
+
+    @Benchmark
+    public void addToIndex() throws IOException {
+        indexBuilder.addToIndex(wikiFiles[next]);
+        next = (next + 1) % wikiFiles.length;
+    }
+}
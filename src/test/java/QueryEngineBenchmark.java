@@ -0,0 +1,51 @@
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-question latency of QueryEngine.search under each
+ * scoring method, against an index built from a synthetic corpus. Each
+ * invocation answers the next question of the generated question set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryEngineBenchmark {
+    @Param({ "positional", "standard" })
+    public String indexType;
+
+    @Param({ "bm25", "tfidf", "default" })
+    public String scoringMethod;
+
+    private BenchmarkCorpus corpus;
+    private QueryEngine queryEngine;
+    private List<Question> questions;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        corpus = new BenchmarkCorpus(5_000, 100, 500);
+        String indexPath = corpus.getIndexPath(indexType).toString();
+        new IndexBuilder(indexType, indexPath, corpus.getWikiPath().toString()).indexWiki();
+        queryEngine = new QueryEngine(indexType, scoringMethod, indexPath);
+        queryEngine.open();
+        questions = corpus.getQuestions();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        queryEngine.close();
+        corpus.delete();
+    }
+
+    @Benchmark
+    public List<SearchHit> search() throws IOException {
+        Question question = questions.get(next);
+        next = (next + 1) % questions.size();
+        return queryEngine.search(question.getCategory(), question.getClue(), null, 10);
+    }
+}
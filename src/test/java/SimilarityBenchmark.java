@@ -0,0 +1,76 @@
+import org.apache.lucene.search.similarities.BasicStats;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.SimilarityBase;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-question latency of TFIDFSimilarity against the
+ * SimilarityBase implementation it replaced, which recomputed the idf and
+ * tf logarithms for every posting, and against BM25. Every similarity
+ * searches the same index through QueryEngine.search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SimilarityBenchmark {
+    @Param({ "standard", "positional" })
+    public String indexType;
+
+    @Param({ "tfidf-base", "tfidf", "bm25" })
+    public String similarityName;
+
+    private BenchmarkCorpus corpus;
+    private QueryEngine queryEngine;
+    private Similarity similarity;
+    private List<Question> questions;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        corpus = new BenchmarkCorpus(5_000, 100, 500);
+        String indexPath = corpus.getIndexPath(indexType).toString();
+        new IndexBuilder(indexType, indexPath, corpus.getWikiPath().toString()).indexWiki();
+        queryEngine = new QueryEngine(indexType, "bm25", indexPath);
+        queryEngine.open();
+        similarity = similarityName.equals("tfidf-base") ? new SimilarityBaseTFIDF()
+                : QueryEngine.similarityFor(similarityName);
+        questions = corpus.getQuestions();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        queryEngine.close();
+        corpus.delete();
+    }
+
+    @Benchmark
+    public List<SearchHit> search() throws IOException {
+        Question question = questions.get(next);
+        next = (next + 1) % questions.size();
+        return queryEngine.search(question.getCategory(), question.getClue(), similarity, 10);
+    }
+
+    /**
+     * TFIDFSimilarity as it was written on SimilarityBase, less the integer
+     * division in its idf, so that both score the same.
+     */
+    static class SimilarityBaseTFIDF extends SimilarityBase {
+        @Override
+        protected float score(BasicStats stats, float termFreq, float docLength) {
+            double tf = 1 + (Math.log(termFreq) / Math.log(2));
+            double idf = Math.log((stats.getNumberOfDocuments() + 1) / (double) stats.getDocFreq()) / Math.log(2);
+            return (float) (tf * idf) * stats.getBoost();
+        }
+
+        @Override
+        public String toString() {
+            return "TFIDF-base";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestAnswerMatcher {
+    @Test
+    public void testAlternatives() {
+        AnswerMatcher matcher = new AnswerMatcher("Colorado River|Colorado");
+        assertTrue(matcher.matches(hit("Colorado River")));
+        assertTrue(matcher.matches(hit("colorado")));
+        assertFalse(matcher.matches(hit("Colorado Springs")));
+        assertFalse(matcher.matches(hit("Colorado River|Colorado")));
+    }
+
+    @Test
+    public void testBracketsAndCase() {
+        AnswerMatcher matcher = new AnswerMatcher("The [Beatles]");
+        assertTrue(matcher.matches(hit("The Beatles")));
+        assertTrue(matcher.matches(hit("[[the beatles]]")));
+        assertFalse(matcher.matches(hit("The Beatle")));
+        assertFalse(matcher.matches(hit("The Beatles!")));
+    }
+
+    @Test
+    public void testDotsAndParenthesesAreLiteral() {
+        AnswerMatcher dotted = new AnswerMatcher("St. Louis");
+        assertTrue(dotted.matches(hit("St. Louis")));
+        assertFalse(dotted.matches(hit("StX Louis")));
+
+        AnswerMatcher parenthesized = new AnswerMatcher("Mercury (planet)|Mercury (element");
+        assertTrue(parenthesized.matches(hit("Mercury (planet)")));
+        assertTrue(parenthesized.matches(hit("Mercury (element")));
+        assertFalse(parenthesized.matches(hit("Mercury planet")));
+    }
+
+    @Test
+    public void testKeyCollisionIsNotAMatch() {
+        AnswerMatcher matcher = new AnswerMatcher("Paris");
+        assertFalse(matcher.matches(new SearchHit(1, "London", AnswerMatcher.titleKey("Paris"), 1f)));
+        assertFalse(matcher.matches(new SearchHit(1, null, 1f)));
+    }
+
+    @Test
+    public void testPosition() {
+        AnswerMatcher matcher = new AnswerMatcher("Iron|Fe");
+        assertEquals(2, matcher.position(Arrays.asList(hit("Copper"), hit("Fe"), hit("Iron"))));
+        assertEquals(0, matcher.position(Arrays.asList(hit("Copper"), hit("Tin"))));
+    }
+
+    private static SearchHit hit(String title) {
+        return new SearchHit(1, title, 1f);
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TestClueQueryBuilder {
+    private static final Analyzer ANALYZER = FieldSchema.analyzer(new EnglishAnalyzer());
+    private static final String[][] DOCS = {
+        { "rivers", "The Grand Canyon was carved by the Colorado River over 2.5 million years" },
+        { "states", "Colorado is a state with a grand canyon of its own" },
+        { "plays", "To be or not to be is asked by Hamlet, prince of Denmark" },
+        { "plays", "Hamlet is a play by Shakespeare" },
+        { "novels", "Moby-Dick is a novel by Herman Melville about a white whale" },
+        { "novels", "Typee was the first book Melville wrote" },
+    };
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void testPlainClue() throws Exception {
+        assertSameScores("RIVERS", "This river carved the Grand Canyon");
+    }
+
+    @Test
+    public void testQuotedPhrases() throws Exception {
+        assertSameScores("RIVERS", "This river flows through \"the Grand Canyon\"");
+        assertSameScores("NOVELS", "He wrote \"Moby-Dick\" and \"Typee\"");
+    }
+
+    @Test
+    public void testUnclosedQuote() throws Exception {
+        assertSameScores("PLAYS", "Hamlet is the \"prince of Denmark");
+        // the empty part after the last quote was not a phrase
+        assertSameScores("NOVELS", "He wrote \"Typee\" and \"");
+    }
+
+    @Test
+    public void testQuoteOfStopWords() throws Exception {
+        assertSameScores("PLAYS", "Hamlet asks \"to be or not to be\"");
+    }
+
+    /**
+     * Checks that the built query matches the same documents with the same
+     * scores as the query QueryParser built for a positional index.
+     */
+    private static void assertSameScores(String category, String clue) throws Exception {
+        ClueQueryBuilder builder = new ClueQueryBuilder(ANALYZER, null, true, false);
+        try (Directory index = buildIndex(); DirectoryReader reader = DirectoryReader.open(index)) {
+            Map<Integer, Float> expected = scores(reader, parserQuery(category, clue));
+            Map<Integer, Float> actual = scores(reader, builder.build(category, clue).getComplete());
+            assertFalse(expected.isEmpty(), "no documents match " + clue);
+            assertEquals(expected.keySet(), actual.keySet(), "documents matching " + clue);
+            for (Map.Entry<Integer, Float> score : expected.entrySet()) {
+                assertEquals(score.getValue(), actual.get(score.getKey()), score.getValue() * TOLERANCE,
+                        clue + " on doc " + score.getKey());
+            }
+        }
+    }
+
+    /**
+     * The query QueryEngine built with QueryParser before ClueQueryBuilder,
+     * for an index with positions.
+     */
+    private static Query parserQuery(String category, String clue) throws Exception {
+        QueryParser queryParser = new QueryParser("body", ANALYZER);
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        if (clue.contains("\"")) {
+            String[] parts = clue.split("\"");
+            for (int i = 1; i < parts.length; i += 2) {
+                query.add(queryParser.parse("\"" + QueryParser.escape(parts[i]) + "\"2.5"), Occur.SHOULD);
+            }
+        }
+        query.add(queryParser.parse(QueryParser.escape(clue + " " + category)), Occur.SHOULD);
+        query.add(new QueryParser("categories", ANALYZER).parse(QueryParser.escape(category)), Occur.SHOULD);
+        return query.build();
+    }
+
+    private static Map<Integer, Float> scores(DirectoryReader reader, Query query) throws Exception {
+        Map<Integer, Float> scores = new HashMap<>();
+        for (ScoreDoc hit : new IndexSearcher(reader).search(query, DOCS.length).scoreDocs) {
+            scores.put(hit.doc, hit.score);
+        }
+        return scores;
+    }
+
+    private static Directory buildIndex() throws Exception {
+        Directory index = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(ANALYZER))) {
+            for (String[] doc : DOCS) {
+                Document document = new Document();
+                document.add(new TextField("categories", doc[0], Field.Store.NO));
+                document.add(new TextField("body", doc[1], Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        return index;
+    }
+}
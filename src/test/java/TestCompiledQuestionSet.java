@@ -0,0 +1,84 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestCompiledQuestionSet {
+    private static final List<Question> QUESTIONS = Arrays.asList(
+            new Question("RIVERS", "This river flows through \"the Grand Canyon\"", "Colorado River"),
+            new Question("NOVELS", "He wrote \"Moby-Dick\" and \"Typee\"", "Herman Melville"),
+            new Question("SCIENCE", "Its symbol is Fe", "Iron"));
+    // magic, version, "positional", checksum and size, then three offsets
+    private static final int LAST_OFFSET = 4 + 4 + 4 + 10 + 8 + 4 + 4 * 2;
+    private static final ClueQueryBuilder BUILDER = new ClueQueryBuilder(FieldSchema.analyzer(new EnglishAnalyzer()),
+            null, true, false);
+
+    @Test
+    public void testCompileAndOpen() throws Exception {
+        Path file = Files.createTempFile("questions", ".compiled");
+        try {
+            CompiledQuestionSet.compile(QUESTIONS, BUILDER, "positional", 42L, file);
+            CompiledQuestionSet compiled = CompiledQuestionSet.open(file, "positional", 42L);
+            assertNotNull(compiled);
+            assertEquals(QUESTIONS.size(), compiled.size());
+
+            List<Question> questions = compiled.getQuestions();
+            for (int i = 0; i < QUESTIONS.size(); i++) {
+                Question question = QUESTIONS.get(i);
+                assertEquals(question.getCategory(), questions.get(i).getCategory());
+                assertEquals(question.getClue(), questions.get(i).getClue());
+                assertEquals(question.getAnswer(), questions.get(i).getAnswer());
+
+                AnalyzedClue expected = BUILDER.analyze(question.getCategory(), question.getClue());
+                AnalyzedClue actual = compiled.getClue(i);
+                assertArrayEquals(expected.getBodyTerms(), actual.getBodyTerms());
+                assertArrayEquals(expected.getCategoryTerms(), actual.getCategoryTerms());
+                assertEquals(expected.getPhraseCount(), actual.getPhraseCount());
+                for (int phrase = 0; phrase < expected.getPhraseCount(); phrase++) {
+                    assertArrayEquals(expected.getPhraseTerms(phrase), actual.getPhraseTerms(phrase));
+                    assertArrayEquals(expected.getPhrasePositions(phrase), actual.getPhrasePositions(phrase));
+                }
+            }
+            assertEquals(2, compiled.getClue(1).getPhraseCount());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testStaleFileIsNotOpened() throws Exception {
+        Path file = Files.createTempFile("questions", ".compiled");
+        try {
+            assertNull(CompiledQuestionSet.open(file.resolveSibling(file.getFileName() + ".missing"), "positional", 42L));
+
+            CompiledQuestionSet.compile(QUESTIONS, BUILDER, "positional", 42L, file);
+            assertNull(CompiledQuestionSet.open(file, "lemma", 42L));
+            assertNull(CompiledQuestionSet.open(file, "positional", 43L));
+
+            // cut short in the header, before the offsets and before the last record
+            byte[] bytes = Files.readAllBytes(file);
+            int lastRecord = ByteBuffer.wrap(bytes).getInt(LAST_OFFSET);
+            for (int length : new int[] { 0, 6, 20, 34, lastRecord }) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                assertNull(CompiledQuestionSet.open(file, "positional", 42L), "cut to " + length + " bytes");
+            }
+
+            // a string length that runs past the end of the file
+            byte[] corrupt = bytes.clone();
+            corrupt[8] = 0x7f;
+            Files.write(file, corrupt);
+            assertNull(CompiledQuestionSet.open(file, "positional", 42L));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
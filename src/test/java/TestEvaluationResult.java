@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestEvaluationResult {
+    // seven questions, one of them missed
+    private static final int[] POSITIONS = { 1, 1, 2, 3, 10, 0, 5 };
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testRankingMetrics() {
+        EvaluationResult result = evaluate();
+        assertEquals(7, result.recorded());
+        assertEquals(2, result.hitsAt(1));
+        assertEquals(2 / 7.0, result.precisionAt1(), DELTA);
+        assertEquals(4 / 7.0, result.recallAt(3), DELTA);
+        assertEquals(5 / 7.0, result.recallAt(5), DELTA);
+        assertEquals(6 / 7.0, result.recallAt(10), DELTA);
+        // beyond the hits searched, nothing more is found
+        assertEquals(6 / 7.0, result.recallAt(20), DELTA);
+
+        // (1 + 1 + 1/2 + 1/3 + 1/10 + 0 + 1/5) / 7 = (47/15) / 7
+        assertEquals(47 / 105.0, result.meanReciprocalRank(), DELTA);
+        // (1 + 1 + 1/log2(3) + 1/log2(4)) / 7, positions past 3 not counted
+        assertEquals(0.447275679, result.ndcgAt(3), 1e-9);
+        // adds 1/log2(6) for position 5 and 1/log2(11) for position 10
+        assertEquals(0.543835341, result.ndcgAt(10), 1e-9);
+
+        assertArrayEquals(new long[] { 2, 1, 1, 0, 1, 0, 0, 0, 0, 1 }, result.histogram());
+        assertEquals(3, result.getPosition(3));
+        assertEquals(4000, result.getLatency(3));
+        // latencies of 1000 to 7000 ns
+        assertEquals(4000.0, result.meanLatency(), DELTA);
+    }
+
+    @Test
+    public void testEmptyAndInvalid() {
+        EvaluationResult result = new EvaluationResult("positional", "bm25", 3, 10);
+        assertEquals(0, result.recorded());
+        assertEquals(0.0, result.precisionAt1(), DELTA);
+        assertEquals(0.0, result.meanReciprocalRank(), DELTA);
+        assertEquals(0.0, result.ndcgAt(10), DELTA);
+        assertThrows(IllegalArgumentException.class, () -> result.record(0, 11, 1000));
+        assertThrows(IllegalArgumentException.class, () -> result.record(0, -1, 1000));
+    }
+
+    private static EvaluationResult evaluate() {
+        EvaluationResult result = new EvaluationResult("positional", "bm25", POSITIONS.length, 10);
+        // out of order, as the evaluation threads finish
+        for (int question = POSITIONS.length - 1; question >= 0; question--) {
+            result.record(question, POSITIONS[question], (question + 1) * 1000L);
+        }
+        return result;
+    }
+}
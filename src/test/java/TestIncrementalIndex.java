@@ -0,0 +1,173 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestIncrementalIndex {
+    private static final int ARTICLES = 200;
+    private static final int ARTICLES_PER_FILE = 20;
+    // a word no generated article contains
+    private static final String NEW_WORD = "zyxwvutsr";
+
+    @Test
+    public void testUnchangedRerunAddsNothing() throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(ARTICLES, ARTICLES_PER_FILE, 0);
+        try {
+            index(corpus, 1, "end");
+            int[] before = counts(corpus.getIndexPath("standard"));
+            assertEquals(ARTICLES, before[0]);
+
+            index(corpus, 1, "end");
+            assertArrayEquals(before, counts(corpus.getIndexPath("standard")));
+        }
+        finally {
+            corpus.delete();
+        }
+    }
+
+    @Test
+    public void testChangedFileReplacesItsDocuments() throws Exception {
+        for (int shards : new int[] { 1, 2 }) {
+            for (int threads : new int[] { 1, 2 }) {
+                assertChangedFileReplacesItsDocuments(shards, threads);
+            }
+        }
+    }
+
+    @Test
+    public void testResumeAfterInterruptedRun() throws Exception {
+        for (int shards : new int[] { 1, 2 }) {
+            BenchmarkCorpus corpus = new BenchmarkCorpus(ARTICLES, ARTICLES_PER_FILE, 0);
+            try {
+                // a directory in place of a wiki file makes the run fail half way,
+                // after commits that end part way through a file
+                Path wikiFile = wikiFiles(corpus).get(ARTICLES / ARTICLES_PER_FILE / 2);
+                byte[] contents = Files.readAllBytes(wikiFile);
+                Files.delete(wikiFile);
+                Files.createDirectory(wikiFile);
+                assertThrows(RuntimeException.class, () -> index(corpus, shards, "docs:7"));
+
+                Files.delete(wikiFile);
+                Files.write(wikiFile, contents);
+                index(corpus, shards, "docs:7");
+                assertEquals(ARTICLES, counts(corpus.getIndexPath("standard"))[0], "with " + shards + " shard(s)");
+            }
+            finally {
+                corpus.delete();
+            }
+        }
+    }
+
+    private static void assertChangedFileReplacesItsDocuments(int shards, int threads) throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(ARTICLES, ARTICLES_PER_FILE, 0);
+        try {
+            index(corpus, shards, threads, "end");
+            List<Integer> docIds = docIds(corpus.getIndexPath("standard"));
+
+            // one article of the first file is edited and its last article removed
+            Path wikiFile = wikiFiles(corpus).get(0);
+            List<WikiArticle> articles = new ArrayList<>(corpus.getArticles().subList(0, ARTICLES_PER_FILE - 1));
+            WikiArticle edited = new WikiArticle(articles.get(3).getTitle());
+            for (String categories : articles.get(3).getCategories()) {
+                edited.addCategories(categories);
+            }
+            edited.setBody(articles.get(3).getBody() + " " + NEW_WORD);
+            articles.set(3, edited);
+            Files.delete(wikiFile);
+            CorpusGenerator.writeWiki(corpus.getWikiPath(), articles, ARTICLES_PER_FILE);
+
+            IndexBuilder builder = index(corpus, shards, threads, "end");
+            String message = "with " + shards + " shard(s) and " + threads + " thread(s)";
+            assertEquals(ARTICLES_PER_FILE - 1L, builder.getMetrics().getAttribute("index.documents"), message);
+            assertEquals(ARTICLES / ARTICLES_PER_FILE - 1L, builder.getMetrics().getAttribute("index.filesSkipped"),
+                    message);
+            int[] counts = counts(corpus.getIndexPath("standard"));
+            assertEquals(ARTICLES - 1, counts[0], message);
+            assertEquals(1, counts[2], message);
+            // the file kept its docIDs, less the one of its removed article
+            docIds.remove(Integer.valueOf(ARTICLES_PER_FILE - 1));
+            assertEquals(docIds, docIds(corpus.getIndexPath("standard")), message);
+        }
+        finally {
+            corpus.delete();
+        }
+    }
+
+    private static IndexBuilder index(BenchmarkCorpus corpus, int shards, String commitPolicy) throws Exception {
+        return index(corpus, shards, 1, commitPolicy);
+    }
+
+    private static IndexBuilder index(BenchmarkCorpus corpus, int shards, int threads, String commitPolicy)
+            throws Exception {
+        IndexBuilder builder = new IndexBuilder("standard", corpus.getIndexPath("standard").toString(),
+                corpus.getWikiPath().toString());
+        builder.setShards(shards);
+        builder.setThreads(threads);
+        builder.setCommitPolicy(CommitPolicy.parse(commitPolicy));
+        builder.indexWiki();
+        return builder;
+    }
+
+    private static List<Path> wikiFiles(BenchmarkCorpus corpus) throws Exception {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(corpus.getWikiPath())) {
+            paths.sorted().forEach(files::add);
+        }
+        return files;
+    }
+
+    /**
+     * Collects the docIDs of the live documents over every shard of an
+     * index, in ascending order.
+     */
+    private static List<Integer> docIds(Path indexPath) throws Exception {
+        List<Integer> docIds = new ArrayList<>();
+        for (Path shard : IndexDirectories.shardPaths(indexPath)) {
+            try (Directory index = FSDirectory.open(shard);
+                 DirectoryReader reader = DirectoryReader.open(index)) {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    Bits liveDocs = leaf.reader().getLiveDocs();
+                    NumericDocValues values = leaf.reader().getNumericDocValues("docId");
+                    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            docIds.add((int) values.longValue());
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(docIds);
+        return docIds;
+    }
+
+    /**
+     * Counts the live documents, all documents and the documents containing
+     * NEW_WORD over every shard of an index.
+     */
+    private static int[] counts(Path indexPath) throws Exception {
+        int[] counts = new int[3];
+        for (Path shard : IndexDirectories.shardPaths(indexPath)) {
+            try (Directory index = FSDirectory.open(shard);
+                 DirectoryReader reader = DirectoryReader.open(index)) {
+                counts[0] += reader.numDocs();
+                counts[1] += reader.maxDoc();
+                counts[2] += reader.docFreq(new Term("body", NEW_WORD));
+            }
+        }
+        return counts;
+    }
+}
@@ -1,10 +1,23 @@
 import java.util.List;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class TestIndex {
     @Test
-    public void testDocs() {
-        IndexBuilder.main(null);
+    public void testDocs() throws Exception {
+        BenchmarkCorpus corpus = new BenchmarkCorpus(200, 20, 0);
+        try {
+            String indexPath = corpus.getIndexPath("standard").toString();
+            new IndexBuilder("standard", indexPath, corpus.getWikiPath().toString()).indexWiki();
+            try (FSDirectory index = FSDirectory.open(corpus.getIndexPath("standard"));
+                 DirectoryReader reader = DirectoryReader.open(index)) {
+                assertEquals(corpus.getArticles().size(), reader.numDocs());
+            }
+        }
+        finally {
+            corpus.delete();
+        }
     }
 }
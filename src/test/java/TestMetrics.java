@@ -0,0 +1,49 @@
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMetrics {
+    @Test
+    public void testMetricsWithTheSameNameAreBothRegistered() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Metrics first = new Metrics("test-duplicate");
+        Metrics second = new Metrics("test-duplicate");
+        first.increment("first");
+        second.increment("second");
+        try {
+            first.register();
+            second.register();
+            ObjectName firstName = first.getObjectName();
+            ObjectName secondName = second.getObjectName();
+            assertNotEquals(firstName, secondName);
+            assertEquals(1L, server.getAttribute(firstName, "first"));
+            assertEquals(1L, server.getAttribute(secondName, "second"));
+
+            // closing the second engine leaves the first one registered
+            second.unregister();
+            assertNull(second.getObjectName());
+            assertFalse(server.isRegistered(secondName));
+            assertTrue(server.isRegistered(firstName));
+        }
+        finally {
+            first.unregister();
+            second.unregister();
+        }
+    }
+
+    @Test
+    public void testInvokeHasNoOperations() {
+        Metrics metrics = new Metrics("test-invoke");
+        ReflectionException e = assertThrows(ReflectionException.class,
+                () -> metrics.invoke("reset", new Object[0], new String[0]));
+        assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+    }
+}
@@ -0,0 +1,124 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestQueryResultCache {
+    private static final List<SearchHit> HITS = Arrays.asList(new SearchHit(3, "Apple", 2.5f),
+            new SearchHit(7, null, 1.25f));
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        // two entries per segment
+        QueryResultCache cache = new QueryResultCache(32, 0);
+        cache.setGeneration("g1");
+        String[] keys = keysInOneSegment(cache, 3);
+        cache.put(keys[0], "g1", HITS);
+        cache.put(keys[1], "g1", HITS);
+        assertNotNull(cache.get(keys[0], "g1"));
+        cache.put(keys[2], "g1", HITS);
+
+        assertNotNull(cache.get(keys[0], "g1"));
+        assertNull(cache.get(keys[1], "g1"));
+        assertNotNull(cache.get(keys[2], "g1"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testHoldsExactlyMaxEntries() {
+        // fewer entries than segments, and sizes that do not divide evenly
+        for (int maxEntries : new int[] { 1, 10, 20, 32 }) {
+            QueryResultCache cache = new QueryResultCache(maxEntries, 0);
+            cache.setGeneration("g1");
+            for (int i = 0; i < 1000; i++) {
+                cache.put("query " + i, "g1", HITS);
+            }
+            assertEquals(maxEntries, cache.size(), "cache of " + maxEntries);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new QueryResultCache(0, 0));
+    }
+
+    @Test
+    public void testExpiresAfterTimeToLive() throws Exception {
+        QueryResultCache cache = new QueryResultCache(16, 1);
+        cache.setGeneration("g1");
+        cache.put("query", "g1", HITS);
+        assertNotNull(cache.get("query", "g1"));
+        Thread.sleep(1100);
+        assertNull(cache.get("query", "g1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOnlyReturnsHitsOfTheSearchedGeneration() {
+        QueryResultCache cache = new QueryResultCache(16, 0);
+        cache.setGeneration("g1");
+        cache.put("query", "g1", HITS);
+        cache.setGeneration("g2");
+
+        // a search still running on the old commit neither reads nor stores new hits
+        assertNull(cache.get("query", "g2"));
+        cache.put("other", "g1", HITS);
+        assertNull(cache.get("other", "g1"));
+        assertEquals(0, cache.size());
+
+        cache.put("query", "g2", HITS);
+        assertNotNull(cache.get("query", "g2"));
+        assertNull(cache.get("query", "g1"));
+        assertEquals(1L, cache.getHits());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Path file = Files.createTempFile("query-cache", ".bin");
+        try {
+            // longer than writeUTF allows
+            char[] clue = new char[70000];
+            Arrays.fill(clue, '\u00e9');
+            String longKey = QueryResultCache.key("positional", "BM25", new String(clue), 10);
+
+            QueryResultCache saved = new QueryResultCache(16, 0);
+            saved.setGeneration("g1");
+            saved.put("query", "g1", HITS);
+            saved.put(longKey, "g1", HITS);
+            saved.save(file);
+
+            QueryResultCache loaded = new QueryResultCache(16, 0);
+            loaded.setGeneration("g1");
+            assertEquals(2, loaded.load(file));
+            for (String key : new String[] { "query", longKey }) {
+                List<SearchHit> hits = loaded.get(key, "g1");
+                assertEquals(HITS.size(), hits.size());
+                for (int i = 0; i < HITS.size(); i++) {
+                    assertEquals(HITS.get(i).getDoc(), hits.get(i).getDoc());
+                    assertEquals(HITS.get(i).getTitle(), hits.get(i).getTitle());
+                    assertEquals(HITS.get(i).getScore(), hits.get(i).getScore(), 0f);
+                }
+            }
+
+            QueryResultCache changed = new QueryResultCache(16, 0);
+            changed.setGeneration("g2");
+            assertEquals(0, changed.load(file));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String[] keysInOneSegment(QueryResultCache cache, int count) {
+        String[] keys = new String[count];
+        int found = 0;
+        for (int i = 0; found < count; i++) {
+            String key = "query " + i;
+            if (cache.segmentOf(key) == 0) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -5,7 +5,7 @@ public class TestSearch {
     //@Test
     public void testDocs() {
         try {
-            QueryEngine.main(null);
+            Driver.main(new String[0]);
         }
         catch(Exception e) {}
     }
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestShardedSearcher {
+    private static final String[] WORDS = { "fruit", "tree", "river", "stone", "cloud" };
+    private static final Query QUERY = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("body", "fruit")), Occur.SHOULD)
+            .add(new TermQuery(new Term("body", "tree")), Occur.SHOULD)
+            .build();
+
+    @Test
+    public void testSameTitleInTwoShardsIsOneHit() throws Exception {
+        String[][] docs = {
+            { "Apple", "fruit tree fruit tree fruit" },
+            { "Apple", "fruit tree fruit tree" },
+            { "Banana", "fruit tree stone" },
+            { "Cherry", "fruit stone stone" },
+        };
+        List<Directory> shards = buildShards(docs, 2);
+        try {
+            SearchHit[] hits = search(shards, QUERY, 3);
+            assertEquals(3, hits.length);
+            assertEquals("Apple", hits[0].getTitle());
+            assertEquals("Banana", hits[1].getTitle());
+            assertEquals("Cherry", hits[2].getTitle());
+        }
+        finally {
+            close(shards);
+        }
+    }
+
+    @Test
+    public void testShardsRankLikeOneIndex() throws Exception {
+        // every body has its own mix of the query terms and its own length
+        String[][] docs = new String[40][];
+        for (int i = 0; i < docs.length; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int word = 0; word < 3 + i % 7; word++) {
+                body.append(WORDS[(i * 7 + word * word) % WORDS.length]).append(' ');
+            }
+            docs[i] = new String[] { "Title " + i, body.append("filler").toString() };
+        }
+        List<Directory> single = buildShards(docs, 1);
+        List<Directory> sharded = buildShards(docs, 3);
+        try {
+            SearchHit[] expected = sortTies(search(single, QUERY, 10));
+            SearchHit[] actual = sortTies(search(sharded, QUERY, 10));
+            assertEquals(10, expected.length);
+            assertEquals(10, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getTitle(), actual[i].getTitle(), "title of hit " + i);
+                assertEquals(expected[i].getScore(), actual[i].getScore(), 1e-6f, "score of hit " + i);
+            }
+        }
+        finally {
+            close(single);
+            close(sharded);
+        }
+    }
+
+    /**
+     * Indexes the documents over a number of shards by docID, the way
+     * ShardedIndexWriter spreads them.
+     */
+    private static List<Directory> buildShards(String[][] docs, int shards) throws Exception {
+        List<Directory> directories = new ArrayList<>();
+        List<IndexWriter> writers = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            Directory directory = new ByteBuffersDirectory();
+            directories.add(directory);
+            writers.add(new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer())));
+        }
+        for (int i = 0; i < docs.length; i++) {
+            Document doc = new Document();
+            doc.add(new StoredField(TitleLookup.FIELD, docs[i][0]));
+            doc.add(new SortedDocValuesField(TitleLookup.FIELD, new BytesRef(docs[i][0])));
+            doc.add(new TextField("body", docs[i][1], Field.Store.NO));
+            writers.get(Math.floorMod(Integer.hashCode(i), shards)).addDocument(doc);
+        }
+        for (IndexWriter writer : writers) {
+            writer.close();
+        }
+        return directories;
+    }
+
+    /**
+     * Searches the shards scored with BM25 and returns the hits, best first.
+     */
+    private static SearchHit[] search(List<Directory> shards, Query query, int numHits) throws Exception {
+        List<SearcherManager> managers = new ArrayList<>();
+        for (Directory shard : shards) {
+            managers.add(new SearcherManager(shard, new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+                    return new TitleSearcher(reader, null);
+                }
+            }));
+        }
+        ShardedSearcher acquired = ShardedSearcher.acquire(managers, null);
+        try {
+            ShardedSearcher searcher = acquired.withSimilarity(QueryEngine.similarityFor("bm25"));
+            ScoreDoc[] hits = searcher.search(query, numHits);
+            SearchHit[] searchHits = new SearchHit[hits.length];
+            for (int i = 0; i < hits.length; i++) {
+                searchHits[i] = searcher.toSearchHit(hits[i]);
+            }
+            return searchHits;
+        }
+        finally {
+            acquired.release(managers);
+            for (SearcherManager manager : managers) {
+                manager.close();
+            }
+        }
+    }
+
+    /**
+     * Orders hits with equal scores by title, since ties are broken by
+     * docID in one index but by shard first across shards.
+     */
+    private static SearchHit[] sortTies(SearchHit[] hits) {
+        Arrays.sort(hits, Comparator.comparing(SearchHit::getScore, Comparator.reverseOrder())
+                .thenComparing(SearchHit::getTitle));
+        return hits;
+    }
+
+    private static void close(List<Directory> directories) throws Exception {
+        for (Directory directory : directories) {
+            directory.close();
+        }
+    }
+}
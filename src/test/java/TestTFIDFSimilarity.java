@@ -0,0 +1,157 @@
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.BasicStats;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.SimilarityBase;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TestTFIDFSimilarity {
+    // 11 documents, so (numDocs + 1) / docFreq is a whole number for every word but "e"
+    private static final int DOCS = 11;
+    private static final String[] WORDS = { "a", "b", "c", "d", "e", "f" };
+    private static final int[] DOC_FREQS = { 1, 2, 3, 4, 5, 6 };
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void testMatchesSimilarityBaseWithFixes() throws Exception {
+        Query[] queries = {
+            new TermQuery(new Term("body", "b")),
+            new TermQuery(new Term("body", "e")),
+            new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("body", "a")), Occur.SHOULD)
+                .add(new TermQuery(new Term("body", "d")), Occur.SHOULD)
+                .add(new TermQuery(new Term("body", "f")), Occur.SHOULD)
+                .build(),
+            new PhraseQuery("body", "e", "f"),
+            new BoostQuery(new TermQuery(new Term("body", "c")), 2.5f),
+        };
+        try (Directory index = buildIndex(); DirectoryReader reader = DirectoryReader.open(index)) {
+            for (Query query : queries) {
+                assertScores(reader, query, new FixedBaseTFIDF(), 1f);
+            }
+        }
+    }
+
+    @Test
+    public void testDiffersFromOldFormulaOnlyByTheFixes() throws Exception {
+        try (Directory index = buildIndex(); DirectoryReader reader = DirectoryReader.open(index)) {
+            // whole-number idf ratios score the same as the old integer division
+            for (String word : new String[] { "a", "b", "c", "d", "f" }) {
+                assertScores(reader, new TermQuery(new Term("body", word)), new OldTFIDF(), 1f);
+            }
+            // 12 / 5 was truncated to 2, so the idf was log2(2) = 1 instead of log2(2.4)
+            float idf = (float) (Math.log(12 / 5.0) / Math.log(2));
+            assertScores(reader, new TermQuery(new Term("body", "e")), new OldTFIDF(), idf);
+            // boosts used to be ignored
+            assertScores(reader, new BoostQuery(new TermQuery(new Term("body", "c")), 2.5f), new OldTFIDF(), 2.5f);
+        }
+    }
+
+    /**
+     * Checks that every document matching a query scores the same under
+     * TFIDFSimilarity as under another similarity times a factor.
+     */
+    private static void assertScores(DirectoryReader reader, Query query, Similarity expected, float factor)
+            throws Exception {
+        Map<Integer, Float> expectedScores = scores(reader, query, expected);
+        Map<Integer, Float> actualScores = scores(reader, query, new TFIDFSimilarity());
+        assertEquals(expectedScores.keySet(), actualScores.keySet(), "documents matching " + query);
+        assertFalse(actualScores.isEmpty(), "no documents match " + query);
+        for (Map.Entry<Integer, Float> score : expectedScores.entrySet()) {
+            float want = score.getValue() * factor;
+            assertEquals(want, actualScores.get(score.getKey()), Math.abs(want) * TOLERANCE,
+                    query + " on doc " + score.getKey());
+        }
+    }
+
+    private static Map<Integer, Float> scores(DirectoryReader reader, Query query, Similarity similarity)
+            throws Exception {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setSimilarity(similarity);
+        Map<Integer, Float> scores = new HashMap<>();
+        for (ScoreDoc hit : searcher.search(query, DOCS).scoreDocs) {
+            scores.put(hit.doc, hit.score);
+        }
+        return scores;
+    }
+
+    /**
+     * Indexes DOCS documents in which WORDS[w] occurs in the first
+     * DOC_FREQS[w] documents, one to three times each.
+     */
+    private static Directory buildIndex() throws Exception {
+        Directory index = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (int doc = 0; doc < DOCS; doc++) {
+                StringBuilder body = new StringBuilder("filler");
+                for (int word = 0; word < WORDS.length; word++) {
+                    if (doc < DOC_FREQS[word]) {
+                        for (int freq = 0; freq <= (doc + word) % 3; freq++) {
+                            body.append(' ').append(WORDS[word]);
+                        }
+                    }
+                }
+                Document document = new Document();
+                document.add(new TextField("body", body.toString(), Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * TFIDFSimilarity as it was first written on SimilarityBase, with the
+     * idf in integer division and the boost ignored.
+     */
+    private static final class OldTFIDF extends SimilarityBase {
+        @Override
+        protected float score(BasicStats stats, float termFreq, float docLength) {
+            double tf = 1 + (Math.log(termFreq) / Math.log(2));
+            double idf = Math.log((stats.getNumberOfDocuments() + 1) / stats.getDocFreq()) / Math.log(2);
+            return (float) (tf * idf);
+        }
+
+        @Override
+        public String toString() {
+            return "old TFIDF";
+        }
+    }
+
+    /**
+     * The same formula on SimilarityBase with both fixes: the idf in
+     * floating point and the boost applied.
+     */
+    private static final class FixedBaseTFIDF extends SimilarityBase {
+        @Override
+        protected float score(BasicStats stats, float termFreq, float docLength) {
+            double tf = 1 + (Math.log(termFreq) / Math.log(2));
+            double idf = Math.log((stats.getNumberOfDocuments() + 1) / (double) stats.getDocFreq()) / Math.log(2);
+            return (float) (tf * idf) * stats.getBoost();
+        }
+
+        @Override
+        public String toString() {
+            return "fixed TFIDF";
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTitleCollapsingCollector {
+    // the Apple documents outrank every other title, and Apple spans segments
+    private static final String[][] DOCS = {
+        { "Apple", "fruit fruit fruit fruit" },
+        { "Apple", "fruit fruit fruit fruit fruit" },
+        { "Banana", "fruit fruit tree" },
+        { "Apple", "fruit fruit fruit" },
+        { "Cherry", "fruit tree tree tree" },
+        { "Apple", "fruit fruit fruit fruit fruit fruit" },
+        { "Date", "fruit tree tree tree tree tree" },
+    };
+
+    @Test
+    public void testUniqueTitlesWhenDuplicatesOutrankThem() throws Exception {
+        for (boolean docValues : new boolean[] { true, false }) {
+            try (Directory index = buildIndex(docValues);
+                 DirectoryReader reader = DirectoryReader.open(index)) {
+                String[] titles = search(reader, 3);
+                assertEquals(3, titles.length, "hits with doc values " + docValues);
+                assertEquals("Apple", titles[0]);
+                assertEquals("Banana", titles[1]);
+                assertEquals("Cherry", titles[2]);
+            }
+        }
+    }
+
+    @Test
+    public void testFewerUniqueTitlesThanRequested() throws Exception {
+        for (boolean docValues : new boolean[] { true, false }) {
+            try (Directory index = buildIndex(docValues);
+                 DirectoryReader reader = DirectoryReader.open(index)) {
+                String[] titles = search(reader, 10);
+                assertEquals(4, titles.length, "hits with doc values " + docValues);
+                Set<String> unique = new HashSet<>();
+                for (String title : titles) {
+                    assertNotNull(title);
+                    assertTrue(unique.add(title), "duplicate title " + title);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes DOCS over several segments, with the titles in doc values or,
+     * as in older indexes, only stored.
+     */
+    private static Directory buildIndex(boolean docValues) throws Exception {
+        Directory index = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(index, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < DOCS.length; i++) {
+                Document doc = new Document();
+                doc.add(new StoredField(TitleLookup.FIELD, DOCS[i][0]));
+                if (docValues) {
+                    doc.add(new SortedDocValuesField(TitleLookup.FIELD, new BytesRef(DOCS[i][0])));
+                }
+                doc.add(new TextField("body", DOCS[i][1], Field.Store.NO));
+                writer.addDocument(doc);
+                if (i % 3 == 2) {
+                    writer.commit();
+                }
+            }
+        }
+        return index;
+    }
+
+    private static String[] search(DirectoryReader reader, int numHits) throws Exception {
+        TitleLookup titles = new TitleLookup(reader);
+        TopDocs docs = new IndexSearcher(reader).search(new TermQuery(new Term("body", "fruit")),
+                TitleCollapsingCollector.manager(titles, numHits));
+        String[] hits = new String[docs.scoreDocs.length];
+        for (int i = 0; i < hits.length; i++) {
+            ScoreDoc hit = docs.scoreDocs[i];
+            assertNotNull(hit);
+            hits[i] = titles.getTitle(hit.doc);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,100 @@
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares TextLemmatizer against the lemmatizeString method that
+ * IndexBuilder and QueryEngine used before it, over the articles in
+ * wiki-example.txt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TextLemmatizerBenchmark {
+    private static final String WIKI_EXAMPLE = "src/main/resources/wiki-example.txt";
+
+    private List<String> articles;
+    private TextLemmatizer textLemmatizer;
+    private POSTaggerME posTagger;
+    private DictionaryLemmatizer lemmatizer;
+
+    @Setup
+    public void setup() throws IOException {
+        articles = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        for (String line : Files.readAllLines(Paths.get(WIKI_EXAMPLE), StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (line.startsWith("[[") && line.endsWith("]]") && !line.startsWith("[[File:")) {
+                if (body.length() > 0) {
+                    articles.add(body.toString());
+                }
+                body.setLength(0);
+            }
+            else if (!line.isBlank()) {
+                body.append(body.length() > 0 ? "\n" : "").append(line);
+            }
+        }
+        articles.add(body.toString());
+
+        textLemmatizer = new TextLemmatizer();
+        try (InputStream posModelIn = new FileInputStream(TextLemmatizer.POS_MODEL_PATH);
+             InputStream dictLemmatizer = new FileInputStream(TextLemmatizer.DICTIONARY_PATH)) {
+            posTagger = new POSTaggerME(new POSModel(posModelIn));
+            lemmatizer = new DictionaryLemmatizer(dictLemmatizer);
+        }
+    }
+
+    @Benchmark
+    public void textLemmatizer(Blackhole bh) {
+        for (String article : articles) {
+            bh.consume(textLemmatizer.lemmatize(article));
+        }
+    }
+
+    @Benchmark
+    public void lemmatizeString(Blackhole bh) {
+        for (String article : articles) {
+            bh.consume(lemmatizeString(article));
+        }
+    }
+
+    /**
+     * The previous lemmatization method, kept as the baseline: the whole
+     * text is tagged as one sentence and joined by string concatenation.
+     *
+     * @param str - String, the string to lemmatize.
+     * @return ret - String, the string once processed.
+     */
+    private String lemmatizeString(String str) {
+        String[] tokens = str.split("[\\s@&.?$+-/=]+");
+        String tags[] = posTagger.tag(tokens);
+        String[] lemmas = lemmatizer.lemmatize(tokens, tags);
+        String ret = "";
+        for (int i = 0; i < lemmas.length; i++) {
+            if (lemmas[i].equals("O")) {
+                ret = ret + tokens[i];
+            }
+            else {
+                ret = ret + lemmas[i];
+            }
+            if (i != lemmas.length - 1) {
+                ret = ret + " ";
+            }
+        }
+        return ret;
+    }
+}